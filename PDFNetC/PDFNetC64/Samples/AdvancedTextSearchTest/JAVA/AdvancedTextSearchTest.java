@@ -0,0 +1,147 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// The following sample illustrates how to search the text of large documents on
+// several threads, and how to stream the results to the caller as they are found, on
+// top of TextSearch (see also TextSearchTest).
+//---------------------------------------------------------------------------------------
+public class AdvancedTextSearchTest {
+    public static void main(String[] args) {
+        PDFNet.initialize();
+
+        // Relative path to the folder containing test files.
+        String input_path = "../../TestFiles/";
+
+        //--------------------------------------------------------------------------------
+        // Example 1) Search a whole document with a single TextSearch, as TextSearchTest
+        // does, and then on four threads. The results arrive in the same order.
+        try {
+            PDFDoc doc = new PDFDoc(input_path + "newsletter.pdf");
+            doc.initSecurityHandler();
+            String pattern = "the";
+            int mode = TextSearch.e_whole_word | TextSearch.e_page_stop;
+
+            long start = System.nanoTime();
+            int found = 0;
+            TextSearch txt_search = new TextSearch();
+            doc.lock();
+            txt_search.begin(doc, pattern, mode, -1, -1);
+            while (true) {
+                TextSearchResult result = txt_search.run();
+                if (result.getCode() == TextSearchResult.e_found) {
+                    ++found;
+                } else if (result.getCode() == TextSearchResult.e_done) {
+                    break;
+                }
+            }
+            doc.unlock();
+            txt_search.destroy();
+            System.out.println(String.format("Example 1: TextSearch found '%s' %d time(s) in %.1f ms",
+                    pattern, found, (System.nanoTime() - start) / 1e6));
+
+            start = System.nanoTime();
+            ParallelTextSearch search = new ParallelTextSearch(4, 1);
+            found = search.search(doc, pattern, mode, -1, -1, new ParallelTextSearch.ResultHandler() {
+                public void handle(TextSearchResult result) {
+                    if (result.getCode() == TextSearchResult.e_page) {
+                        System.out.println("  page " + result.getPageNum() + " done");
+                    }
+                }
+            });
+            System.out.println(String.format("Example 1: ParallelTextSearch found '%s' %d time(s) in %.1f ms",
+                    pattern, found, (System.nanoTime() - start) / 1e6));
+            search.shutdown();
+            doc.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        //--------------------------------------------------------------------------------
+        // Example 2) Find the credit card numbers in a document, with highlights.
+        try {
+            final PDFDoc doc = new PDFDoc(input_path + "credit card numbers.pdf");
+            doc.initSecurityHandler();
+
+            ParallelTextSearch search = new ParallelTextSearch(4);
+            int mode = TextSearch.e_reg_expression | TextSearch.e_highlight;
+            search.search(doc, "\\d{4}-\\d{4}-\\d{4}-\\d{4}", mode, -1, -1, new ParallelTextSearch.ResultHandler() {
+                public void handle(TextSearchResult result) {
+                    System.out.println("Example 2: found " + result.getResultStr() + " on page " + result.getPageNum());
+                    Highlights hlts = result.getHighlights();
+                    hlts.begin(doc);
+                    while (hlts.hasNext()) {
+                        double[] q = hlts.getCurrentQuads();
+                        System.out.println(String.format("  %d quad(s), the first at (%.1f, %.1f)", q.length / 8, q[0], q[1]));
+                        hlts.next();
+                    }
+                }
+            });
+            search.shutdown();
+            doc.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        //--------------------------------------------------------------------------------
+        // Example 3) Subscribe to the matches of a search, the way a viewer would show
+        // the first hits while the rest of the document has not been searched yet. The
+        // subscriber asks for 10 matches at a time and cancels after 20; the search stops
+        // right there.
+        try {
+            PDFDoc doc = new PDFDoc(input_path + "newsletter.pdf");
+            doc.initSecurityHandler();
+
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            final CountDownLatch finished = new CountDownLatch(1);
+            TextSearchPublisher publisher = new TextSearchPublisher(doc, "the", TextSearch.e_whole_word, -1, -1, executor);
+            publisher.subscribe(new Flow.Subscriber<TextSearchResult>() {
+                private Flow.Subscription subscription;
+                private int received = 0;
+
+                public void onSubscribe(Flow.Subscription s) {
+                    subscription = s;
+                    subscription.request(10);
+                }
+
+                public void onNext(TextSearchResult result) {
+                    ++received;
+                    System.out.println("Example 3: match " + received + " on page " + result.getPageNum() + ": " + result.getResultStr());
+                    if (received == 20) {
+                        subscription.cancel();
+                        finished.countDown();
+                    } else if (received % 10 == 0) {
+                        subscription.request(10);
+                    }
+                }
+
+                public void onError(Throwable t) {
+                    t.printStackTrace();
+                    finished.countDown();
+                }
+
+                public void onComplete() {
+                    System.out.println("Example 3: all " + received + " matches received");
+                    finished.countDown();
+                }
+            });
+            finished.await();
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            doc.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        PDFNet.terminate();
+    }
+}
@@ -0,0 +1,42 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+//---------------------------------------------------------------------------------------
+// The Reactive Streams interfaces, with the same methods and contracts as
+// java.util.concurrent.Flow in Java 9 and later, so that the samples can still be built
+// and run on Java 8. A subscriber receives onSubscribe() first, then at most as many
+// onNext() calls as it requested through its Subscription, and finally onComplete() or
+// onError(), unless it cancels the subscription. Calls to one subscriber never overlap.
+//
+// Being in the default package, this class hides java.util.concurrent.Flow on Java 9
+// and later, including in files that import java.util.concurrent.*; the two are not
+// interchangeable, so a JDK Flow.Subscriber cannot subscribe to TextSearchPublisher
+// without an adapter.
+//---------------------------------------------------------------------------------------
+public final class Flow {
+
+    private Flow() {
+    }
+
+    public interface Publisher<T> {
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    public interface Subscription {
+        void request(long n);
+
+        void cancel();
+    }
+}
@@ -0,0 +1,185 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// ParallelTextSearch runs a TextSearch over a range of pages on a number of worker
+// threads, and hands the results to the caller in document order.
+//
+// The page range is split into shards of a few pages. Every worker owns a TextSearch,
+// which it begins on the pages of one shard at a time, and holds a read lock on the
+// document for each begin() and run() call, so the document does not have to be locked
+// for the whole search as in TextSearchTest. Results are streamed: the results of the
+// first unfinished shard are handed to the ResultHandler as soon as they are found,
+// while the following shards are searched ahead.
+//
+// At most 2 * concurrency shards are searched ahead of the shard that is being handed
+// to the ResultHandler. Since shards are searched independently, TextSearch.e_search_up
+// is ignored, and a match can not span two shards.
+//---------------------------------------------------------------------------------------
+public class ParallelTextSearch {
+
+    // Called on the calling thread, in document order, with every e_found result and,
+    // if TextSearch.e_page_stop is set in the search mode, with an e_page result after
+    // each page.
+    public interface ResultHandler {
+        void handle(TextSearchResult result) throws Exception;
+    }
+
+    private static final Object END_OF_SHARD = new Object();
+
+    private static class Shard {
+        int first_page, last_page;
+        final BlockingQueue<Object> results = new LinkedBlockingQueue<Object>();
+        Future<?> future;
+    }
+
+    private final int concurrency;
+    private final int shard_pages;
+    private final ExecutorService executor;
+    private final BlockingQueue<TextSearch> searches;
+
+    // Pages are searched in shards of 'shard_pages' pages.
+    public ParallelTextSearch(int concurrency, int shard_pages) {
+        if (concurrency < 1 || shard_pages < 1) {
+            throw new IllegalArgumentException("concurrency and shard_pages must be at least 1");
+        }
+        this.concurrency = concurrency;
+        this.shard_pages = shard_pages;
+        executor = Executors.newFixedThreadPool(concurrency);
+        searches = new ArrayBlockingQueue<TextSearch>(concurrency);
+        for (int i = 0; i < concurrency; ++i) {
+            searches.add(new TextSearch());
+        }
+    }
+
+    public ParallelTextSearch(int concurrency) {
+        this(concurrency, 8);
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    // Searches pages 'start_page' to 'end_page' (inclusive) for 'pattern', with the
+    // same arguments as TextSearch.begin(); -1 stands for the first or last page.
+    // Returns the number of matches. One search runs at a time.
+    public synchronized int search(PDFDoc doc, String pattern, int mode, int start_page, int end_page, ResultHandler handler) throws Exception {
+        int page_count;
+        doc.lockRead();
+        try {
+            page_count = doc.getPageCount();
+        } finally {
+            doc.unlockRead();
+        }
+        int first = start_page < 1 ? 1 : start_page;
+        int last = end_page < 1 || end_page > page_count ? page_count : end_page;
+        boolean page_events = (mode & TextSearch.e_page_stop) != 0;
+        int shard_mode = (mode & ~TextSearch.e_search_up) | TextSearch.e_page_stop;
+
+        int found = 0;
+        int look_ahead = 2 * concurrency;
+        ArrayDeque<Shard> pending = new ArrayDeque<Shard>();
+        AtomicBoolean stopped = new AtomicBoolean(false);
+        try {
+            int next_page = first;
+            while (next_page <= last || !pending.isEmpty()) {
+                while (next_page <= last && pending.size() < look_ahead) {
+                    Shard shard = new Shard();
+                    shard.first_page = next_page;
+                    shard.last_page = Math.min(last, next_page + shard_pages - 1);
+                    shard.future = submit(doc, pattern, shard_mode, shard, stopped);
+                    pending.add(shard);
+                    next_page = shard.last_page + 1;
+                }
+
+                Shard shard = pending.removeFirst();
+                Object r;
+                while ((r = shard.results.take()) != END_OF_SHARD) {
+                    TextSearchResult result = (TextSearchResult) r;
+                    if (result.getCode() == TextSearchResult.e_found) {
+                        ++found;
+                        handler.handle(result);
+                    } else if (page_events) {
+                        handler.handle(result);
+                    }
+                }
+                await(shard.future); // rethrows the worker's exception, if any
+            }
+        } finally {
+            stopped.set(true);
+            for (Shard shard : pending) {
+                shard.future.cancel(false);
+            }
+        }
+        return found;
+    }
+
+    // Stops the worker threads and frees the searches.
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        for (TextSearch s : searches) {
+            s.destroy();
+        }
+        searches.clear();
+    }
+
+    private Future<?> submit(final PDFDoc doc, final String pattern, final int mode, final Shard shard, final AtomicBoolean stopped) {
+        return executor.submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                TextSearch txt_search = searches.take();
+                try {
+                    doc.lockRead();
+                    try {
+                        txt_search.begin(doc, pattern, mode, shard.first_page, shard.last_page);
+                    } finally {
+                        doc.unlockRead();
+                    }
+                    while (!stopped.get()) {
+                        TextSearchResult result;
+                        doc.lockRead();
+                        try {
+                            result = txt_search.run();
+                        } finally {
+                            doc.unlockRead();
+                        }
+                        if (result.getCode() == TextSearchResult.e_done) {
+                            break;
+                        }
+                        shard.results.add(result);
+                    }
+                    return null;
+                } finally {
+                    searches.put(txt_search);
+                    shard.results.add(END_OF_SHARD);
+                }
+            }
+        });
+    }
+
+    private static void await(Future<?> future) throws Exception {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+}
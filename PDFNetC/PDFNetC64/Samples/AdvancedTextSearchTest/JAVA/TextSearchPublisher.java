@@ -0,0 +1,184 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// TextSearchPublisher publishes the matches of a TextSearch (the e_found results) to
+// Flow subscribers, instead of making the caller drive the run() loop of
+// TextSearchTest until every match is found.
+//
+// Every subscription runs its own TextSearch on the given executor, and only while
+// the subscriber has outstanding demand: a subscriber that requests 20 items gets the
+// first 20 matches, and the search stays suspended until it requests more. The search
+// always runs with TextSearch.e_page_stop, so it returns after every page and a
+// cancelled subscription stops within one page. The document is read-locked for each
+// begin() and run() call only.
+//---------------------------------------------------------------------------------------
+public class TextSearchPublisher implements Flow.Publisher<TextSearchResult> {
+
+    private final PDFDoc doc;
+    private final String pattern;
+    private final int mode;
+    private final int start_page, end_page;
+    private final Executor executor;
+
+    // The arguments are those of TextSearch.begin(). Subscribers are signalled on
+    // threads of 'executor'.
+    public TextSearchPublisher(PDFDoc doc, String pattern, int mode, int start_page, int end_page, Executor executor) {
+        this.doc = doc;
+        this.pattern = pattern;
+        this.mode = mode | TextSearch.e_page_stop;
+        this.start_page = start_page;
+        this.end_page = end_page;
+        this.executor = executor;
+    }
+
+    public void subscribe(Flow.Subscriber<? super TextSearchResult> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException();
+        }
+        SearchSubscription subscription = new SearchSubscription(subscriber);
+        try {
+            subscriber.onSubscribe(subscription);
+        } finally {
+            subscription.release();
+        }
+    }
+
+    private class SearchSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super TextSearchResult> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        // Starts at 1 so that requests made from within onSubscribe() are only acted on
+        // once onSubscribe() has returned; see release().
+        private final AtomicInteger pending_signals = new AtomicInteger(1);
+        private volatile boolean cancelled = false;
+        private volatile Throwable bad_request = null;
+
+        // Only used by the thread that runs drain().
+        private TextSearch txt_search = null;
+        private boolean done = false;
+
+        SearchSubscription(Flow.Subscriber<? super TextSearchResult> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        public void request(long n) {
+            if (n <= 0) {
+                bad_request = new IllegalArgumentException("non-positive request: " + n);
+            } else {
+                long d, next;
+                do {
+                    d = demand.get();
+                    next = d + n < 0 ? Long.MAX_VALUE : d + n; // saturates, as the spec requires
+                } while (!demand.compareAndSet(d, next));
+            }
+            signal();
+        }
+
+        public void cancel() {
+            cancelled = true;
+            signal();
+        }
+
+        // Schedules drain() unless it is already scheduled or running; in that case the
+        // running drain() picks up the new state before it returns.
+        private void signal() {
+            if (pending_signals.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        // Called by subscribe() after onSubscribe() has returned. Schedules drain() if
+        // the subscriber requested items or cancelled in the meantime.
+        private void release() {
+            if (pending_signals.decrementAndGet() != 0) {
+                executor.execute(this);
+            }
+        }
+
+        public void run() {
+            int missed = 1;
+            while (true) {
+                drain();
+                missed = pending_signals.addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        private void drain() {
+            while (!done) {
+                if (cancelled) {
+                    finish();
+                    return;
+                }
+                if (bad_request != null) {
+                    finish();
+                    subscriber.onError(bad_request);
+                    return;
+                }
+                if (demand.get() == 0) {
+                    return;
+                }
+
+                TextSearchResult result;
+                try {
+                    result = step();
+                } catch (Throwable t) {
+                    finish();
+                    subscriber.onError(t);
+                    return;
+                }
+                if (result == null) {
+                    continue; // e_page: check for cancellation before the next page
+                }
+                if (result.getCode() == TextSearchResult.e_done) {
+                    finish();
+                    subscriber.onComplete();
+                    return;
+                }
+                demand.decrementAndGet();
+                try {
+                    subscriber.onNext(result);
+                } catch (RuntimeException e) {
+                    finish(); // a subscriber that throws is treated as cancelled
+                    throw e;
+                }
+            }
+        }
+
+        // Runs the search to the next match or page boundary. Returns null at a page
+        // boundary.
+        private TextSearchResult step() throws Exception {
+            doc.lockRead();
+            try {
+                if (txt_search == null) {
+                    txt_search = new TextSearch();
+                    if (!txt_search.begin(doc, pattern, mode, start_page, end_page)) {
+                        throw new IllegalArgumentException("Invalid search pattern: " + pattern);
+                    }
+                }
+                TextSearchResult result = txt_search.run();
+                return result.getCode() == TextSearchResult.e_page ? null : result;
+            } finally {
+                doc.unlockRead();
+            }
+        }
+
+        private void finish() {
+            done = true;
+            if (txt_search != null) {
+                txt_search.destroy();
+                txt_search = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,398 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.pdftron.common.Matrix2D;
+import com.pdftron.common.PDFNetException;
+import com.pdftron.pdf.*;
+import com.pdftron.sdf.Obj;
+
+//---------------------------------------------------------------------------------------
+// ContentVisitor reads the content of a page with a single ElementReader pass and
+// hands every element to all registered consumers that are interested in it, so that
+// e.g. text, image and path processing (see TextExtractTest, ImageExtractTest and
+// ElementReaderAdvTest) no longer parse the page once each.
+//
+// Every consumer declares the element types it wants (see typeMask()); elements of
+// other types are not passed to it, and an element that no consumer wants costs only
+// the ElementReader.next() and Element.getType() calls. Form XObjects and tiling
+// pattern cells are entered as in ElementReaderAdvTest, depending on the options.
+//
+// Consumers must not move the reader (e.g. call next(), formBegin() or end()); the
+// visitor does that.
+//
+// A form XObject that is placed on many pages (a letterhead, logo or footer) can be
+// processed once instead of on every placement: consumers that implement FormConsumer
+// collect what they find in a form into a per-form result, which the visitor caches by
+// the form's object number and the inherited graphics state (fill and stroke color,
+// opacity and blend mode). Later placements of the form get the cached result through
+// FormConsumer.place() together with the placement matrix, and the form is not read
+// again unless an ordinary consumer needs its content. The cache lives as long as the
+// visitor; call clearFormCache() before visiting the pages of another document.
+//---------------------------------------------------------------------------------------
+public class ContentVisitor {
+
+    // Options
+    public static final int e_forms = 1;      // enter form XObjects
+    public static final int e_patterns = 2;   // enter the cells of tiling patterns used to fill paths
+
+    public interface Consumer {
+        // The element types passed to visit(), as a typeMask().
+        int getTypes();
+
+        void visit(Element element, Context ctx) throws Exception;
+    }
+
+    // A consumer whose results for the content of a form XObject can be cached and
+    // reused for other placements of the form.
+    //
+    // While the visitor records a form, ctx.getFormResult(this) returns the result the
+    // consumer should add to, and coordinates should be mapped to the form's space with
+    // ctx.getFormMatrix(), e.g. by concat(toArray(element.getCTM()), ctx.getFormMatrix()).
+    // Outside of forms getFormResult() returns null and getFormMatrix() the identity.
+    public interface FormConsumer<R> extends Consumer {
+        // Returns an empty result for a form that is about to be recorded.
+        R createFormResult();
+
+        // Called for every placement of a form, with the form's result and the matrix
+        // from the form's space to the current space: the page, or the enclosing form
+        // if that is being recorded (see ctx.getFormResult()).
+        void place(R result, double[] matrix, Context ctx) throws Exception;
+    }
+
+    // Where the current element is.
+    public static class Context {
+        Page page;
+        int page_num;
+        int form_depth;     // number of enclosing form XObjects
+        int pattern_depth;  // number of enclosing pattern cells
+        ElementReader reader;
+        FormConsumer<?>[] memo;
+        Object[] form_results;                  // of the form being recorded, by consumer, or null
+        double[] form_matrix = identity();      // from the current space to the form being recorded
+
+        public Page getPage() {
+            return page;
+        }
+
+        public int getPageNumber() {
+            return page_num;
+        }
+
+        public int getFormDepth() {
+            return form_depth;
+        }
+
+        public boolean isInPattern() {
+            return pattern_depth > 0;
+        }
+
+        // The reader, e.g. for its graphics state change list. It must not be moved.
+        public ElementReader getReader() {
+            return reader;
+        }
+
+        // Returns the result of 'consumer' for the form that is being recorded, or null.
+        @SuppressWarnings("unchecked")
+        public <R> R getFormResult(FormConsumer<R> consumer) {
+            if (form_results != null) {
+                for (int i = 0; i < memo.length; ++i) {
+                    if (memo[i] == consumer) {
+                        return (R) form_results[i];
+                    }
+                }
+            }
+            return null;
+        }
+
+        // Returns the matrix from page space (e.g. Element.getCTM()) to the space of the
+        // form that is being recorded. The array must not be modified.
+        public double[] getFormMatrix() {
+            return form_matrix;
+        }
+    }
+
+    private static final int TYPE_COUNT = Element.e_marked_content_point + 1;
+
+    private final int options;
+    private Consumer[][] dispatch = new Consumer[TYPE_COUNT][0]; // consumers by element type
+    private Consumer[][] plain_dispatch = new Consumer[TYPE_COUNT][0]; // the same, without FormConsumers
+    private int plain_types = 0;
+    private FormConsumer<?>[] memo = new FormConsumer<?>[0];
+    private final Map<FormKey, Object[]> form_cache = new HashMap<FormKey, Object[]>();
+    private final ElementReader reader;
+    private final Context ctx = new Context();
+
+    private long page_count = 0, element_count = 0, visit_count = 0, form_count = 0, pattern_count = 0;
+    private long forms_recorded = 0, forms_reused = 0, forms_skipped = 0;
+
+    public ContentVisitor(int options) throws com.pdftron.common.PDFNetException {
+        this.options = options;
+        this.reader = new ElementReader();
+        ctx.reader = reader;
+    }
+
+    // Returns the mask for the given Element types, e.g. typeMask(Element.e_text).
+    public static int typeMask(int... types) {
+        int mask = 0;
+        for (int t : types) {
+            mask |= 1 << t;
+        }
+        return mask;
+    }
+
+    public void addConsumer(Consumer consumer) {
+        int mask = consumer.getTypes();
+        boolean memoized = consumer instanceof FormConsumer;
+        if (memoized) {
+            memo = Arrays.copyOf(memo, memo.length + 1);
+            memo[memo.length - 1] = (FormConsumer<?>) consumer;
+            ctx.memo = memo;
+            form_cache.clear(); // cached forms have no result for the new consumer
+        } else {
+            plain_types |= mask;
+        }
+        for (int t = 0; t < TYPE_COUNT; ++t) {
+            if ((mask & (1 << t)) != 0) {
+                dispatch[t] = add(dispatch[t], consumer);
+                if (!memoized) {
+                    plain_dispatch[t] = add(plain_dispatch[t], consumer);
+                }
+            }
+        }
+    }
+
+    // Forgets the recorded forms, e.g. before visiting another document.
+    public void clearFormCache() {
+        form_cache.clear();
+    }
+
+    // Reads the page once and passes its elements to the consumers.
+    public void visit(Page page) throws Exception {
+        ctx.page = page;
+        ctx.page_num = page.getIndex();
+        ctx.form_depth = 0;
+        ctx.pattern_depth = 0;
+        reader.begin(page);
+        try {
+            walk(dispatch);
+        } finally {
+            reader.end();
+            ctx.form_results = null;
+            ctx.form_matrix = identity();
+        }
+        ++page_count;
+    }
+
+    public void destroy() throws com.pdftron.common.PDFNetException {
+        reader.destroy();
+    }
+
+    public String getStats() {
+        String stats = String.format("%d pages, %d elements read, %d consumer calls, %d forms and %d pattern cells entered",
+                page_count, element_count, visit_count, form_count, pattern_count);
+        if (memo.length > 0) {
+            stats += String.format(", %d forms recorded, %d placements reused (%d without reading the form)",
+                    forms_recorded, forms_reused, forms_skipped);
+        }
+        return stats;
+    }
+
+    //------------------------------------------------------------------------------------
+    // Matrices, as {a, b, c, d, h, v} (see Matrix2D): a point (x, y) is mapped to
+    // (a*x + c*y + h, b*x + d*y + v).
+
+    public static double[] identity() {
+        return new double[]{1, 0, 0, 1, 0, 0};
+    }
+
+    public static double[] toArray(Matrix2D m) throws PDFNetException {
+        return new double[]{m.getA(), m.getB(), m.getC(), m.getD(), m.getH(), m.getV()};
+    }
+
+    // Returns the matrix that applies 'm' and then 'n'.
+    public static double[] concat(double[] m, double[] n) {
+        return new double[]{
+                m[0] * n[0] + m[1] * n[2], m[0] * n[1] + m[1] * n[3],
+                m[2] * n[0] + m[3] * n[2], m[2] * n[1] + m[3] * n[3],
+                m[4] * n[0] + m[5] * n[2] + n[4], m[4] * n[1] + m[5] * n[3] + n[5]};
+    }
+
+    // Returns the inverse of 'm', or null if it is not invertible.
+    public static double[] invert(double[] m) {
+        double det = m[0] * m[3] - m[1] * m[2];
+        if (det == 0 || Double.isNaN(det) || Double.isInfinite(det)) {
+            return null;
+        }
+        double a = m[3] / det, b = -m[1] / det, c = -m[2] / det, d = m[0] / det;
+        return new double[]{a, b, c, d, -(m[4] * a + m[5] * c), -(m[4] * b + m[5] * d)};
+    }
+
+    // Maps the point (x, y) into out[off], out[off + 1].
+    public static void transform(double[] m, double x, double y, double[] out, int off) {
+        out[off] = m[0] * x + m[2] * y + m[4];
+        out[off + 1] = m[1] * x + m[3] * y + m[5];
+    }
+
+    private void walk(Consumer[][] table) throws Exception {
+        boolean patterns = (options & e_patterns) != 0;
+        boolean fill_pattern = false; // whether the fill color is a tiling pattern
+        boolean first_path = true;
+
+        Element element;
+        while ((element = reader.next()) != null) {
+            ++element_count;
+            int type = element.getType();
+            Consumer[] targets = table[type];
+            for (Consumer c : targets) {
+                c.visit(element, ctx);
+            }
+            visit_count += targets.length;
+
+            if (type == Element.e_form) {
+                if ((options & e_forms) != 0) {
+                    enterForm(element, table);
+                }
+            } else if (type == Element.e_path && patterns) {
+                // Only look at the fill color when it changed, as in ProcessPath() in
+                // ElementReaderAdvTest.
+                if (first_path || reader.isChanged(GState.e_fill_cs) || reader.isChanged(GState.e_fill_color)) {
+                    GState gs = element.getGState();
+                    fill_pattern = gs.getFillColorSpace().getType() == ColorSpace.e_pattern
+                            && gs.getFillPattern().getType() != PatternColor.e_shading;
+                    reader.clearChangeList();
+                    first_path = false;
+                }
+                if (fill_pattern && element.isFilled()) {
+                    ++pattern_count;
+                    ++ctx.pattern_depth;
+                    reader.patternBegin(true);
+                    walk(table);
+                    reader.end();
+                    --ctx.pattern_depth;
+                    first_path = true; // the cell has its own graphics state
+                }
+            }
+        }
+    }
+
+    private void enterForm(Element element, Consumer[][] table) throws Exception {
+        if (memo.length == 0 || table != dispatch) {
+            // Nothing to memoize, or inside a form whose result is cached already.
+            readForm(table);
+            return;
+        }
+
+        double[] ctm = toArray(element.getCTM());
+        double[] inverse = invert(ctm);
+        if (inverse == null) { // nothing of the form is visible
+            readForm(plain_dispatch);
+            return;
+        }
+        FormKey key = new FormKey(element.getXObject(), element.getGState());
+        Object[] results = form_cache.get(key);
+        if (results == null) {
+            results = new Object[memo.length];
+            for (int i = 0; i < memo.length; ++i) {
+                results[i] = memo[i].createFormResult();
+            }
+            Object[] outer_results = ctx.form_results;
+            double[] outer_matrix = ctx.form_matrix;
+            ctx.form_results = results;
+            ctx.form_matrix = inverse;
+            try {
+                readForm(dispatch);
+            } finally {
+                ctx.form_results = outer_results;
+                ctx.form_matrix = outer_matrix;
+            }
+            form_cache.put(key, results);
+            ++forms_recorded;
+        } else {
+            ++forms_reused;
+            if (plain_types != 0) {
+                readForm(plain_dispatch);
+            } else {
+                ++forms_skipped;
+            }
+        }
+
+        double[] placement = concat(ctm, ctx.form_matrix);
+        for (int i = 0; i < memo.length; ++i) {
+            place(memo[i], results[i], placement);
+        }
+    }
+
+    private void readForm(Consumer[][] table) throws Exception {
+        ++form_count;
+        ++ctx.form_depth;
+        reader.formBegin();
+        try {
+            walk(table);
+        } finally {
+            reader.end();
+            --ctx.form_depth;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> void place(FormConsumer<R> consumer, Object result, double[] matrix) throws Exception {
+        consumer.place((R) result, matrix, ctx);
+    }
+
+    private static Consumer[] add(Consumer[] list, Consumer consumer) {
+        Consumer[] r = Arrays.copyOf(list, list.length + 1);
+        r[list.length] = consumer;
+        return r;
+    }
+
+    // Identifies a form XObject together with the graphics state that its content
+    // inherits from the placement.
+    private static class FormKey {
+        private final long id;
+        private final double[] gs;
+        private final int hash;
+
+        FormKey(Obj xobj, GState gs) throws PDFNetException {
+            this.id = (xobj.getObjNum() << 16) | xobj.getGenNum();
+            double[] fill = getColor(gs.getFillColorSpace(), gs.getFillColor());
+            double[] stroke = getColor(gs.getStrokeColorSpace(), gs.getStrokeColor());
+            double[] v = new double[fill.length + stroke.length + 3];
+            System.arraycopy(fill, 0, v, 0, fill.length);
+            System.arraycopy(stroke, 0, v, fill.length, stroke.length);
+            v[v.length - 3] = gs.getFillOpacity();
+            v[v.length - 2] = gs.getStrokeOpacity();
+            v[v.length - 1] = gs.getBlendMode();
+            this.gs = v;
+            this.hash = 31 * Long.hashCode(id) + Arrays.hashCode(v);
+        }
+
+        // The color space type, followed by the color components.
+        private static double[] getColor(ColorSpace cs, ColorPt color) throws PDFNetException {
+            int n = cs.getType() == ColorSpace.e_pattern ? 0 : cs.getComponentNum();
+            double[] v = new double[n + 1];
+            v[0] = cs.getType();
+            for (int i = 0; i < n; ++i) {
+                v[i + 1] = color.get(i);
+            }
+            return v;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof FormKey)) {
+                return false;
+            }
+            FormKey k = (FormKey) o;
+            return id == k.id && Arrays.equals(gs, k.gs);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// The following sample illustrates how to process page content for several purposes
+// (text, images, vector graphics) with a single ElementReader pass per page, instead
+// of one pass for each as in ElementReaderAdvTest, ImageExtractTest and
+// TextExtractTest.
+//---------------------------------------------------------------------------------------
+public class ContentVisitorTest {
+    public static void main(String[] args) {
+        PDFNet.initialize();
+
+        // Relative path to the folder containing test files.
+        String input_path = "../../TestFiles/";
+        String output_path = "../../TestFiles/Output/";
+
+        //--------------------------------------------------------------------------------
+        // Example 1) Count the text, images and paths of a document in one pass over
+        // every page, including the content of form XObjects and tiling patterns.
+        try {
+            PDFDoc doc = new PDFDoc(input_path + "newsletter.pdf");
+            doc.initSecurityHandler();
+
+            final int[] text_count = {0}, char_count = {0}, image_count = {0}, path_count = {0}, fill_count = {0};
+            ContentVisitor visitor = new ContentVisitor(ContentVisitor.e_forms | ContentVisitor.e_patterns);
+            visitor.addConsumer(new ContentVisitor.Consumer() {
+                public int getTypes() {
+                    return ContentVisitor.typeMask(Element.e_text);
+                }
+
+                public void visit(Element element, ContentVisitor.Context ctx) throws Exception {
+                    ++text_count[0];
+                    char_count[0] += element.getTextString().length();
+                }
+            });
+            visitor.addConsumer(new ContentVisitor.Consumer() {
+                public int getTypes() {
+                    return ContentVisitor.typeMask(Element.e_image, Element.e_inline_image);
+                }
+
+                public void visit(Element element, ContentVisitor.Context ctx) throws Exception {
+                    ++image_count[0];
+                    System.out.println(String.format("  page %d: %dx%d image%s", ctx.getPageNumber(),
+                            element.getImageWidth(), element.getImageHeight(), ctx.getFormDepth() > 0 ? " in a form" : ""));
+                }
+            });
+            visitor.addConsumer(new ContentVisitor.Consumer() {
+                public int getTypes() {
+                    return ContentVisitor.typeMask(Element.e_path);
+                }
+
+                public void visit(Element element, ContentVisitor.Context ctx) throws Exception {
+                    ++path_count[0];
+                    if (element.isFilled()) {
+                        ++fill_count[0];
+                    }
+                }
+            });
+
+            long start = System.nanoTime();
+            for (PageIterator itr = doc.getPageIterator(); itr.hasNext(); ) {
+                visitor.visit(itr.next());
+            }
+            System.out.println(String.format("Example 1: %d text elements (%d chars), %d images, %d paths (%d filled) in %.1f ms",
+                    text_count[0], char_count[0], image_count[0], path_count[0], fill_count[0], (System.nanoTime() - start) / 1e6));
+            System.out.println("Example 1: " + visitor.getStats());
+
+            visitor.destroy();
+            doc.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        //--------------------------------------------------------------------------------
+        // Example 2) Find the position of every image on pages that all show the same
+        // form XObject, as a letterhead or a stamped page would. The form is read once;
+        // on the other pages the image positions recorded for it are transformed by the
+        // placement matrix.
+        try {
+            PDFDoc src = new PDFDoc(input_path + "newsletter.pdf");
+            src.initSecurityHandler();
+            PDFDoc doc = new PDFDoc();
+            Page[] imported = doc.importPages(new Page[]{src.getPage(1)});
+
+            ElementBuilder builder = new ElementBuilder();
+            ElementWriter writer = new ElementWriter();
+            Element element = builder.createForm(imported[0]); // one form XObject, placed on every page
+            for (int i = 0; i < 50; ++i) {
+                Page page = doc.pageCreate(new Rect(0, 0, 612, 792));
+                writer.begin(page);
+                double scale = 0.25 + 0.01 * i;
+                element.getGState().setTransform(scale, 0, 0, scale, 2 * i, 3 * i);
+                writer.writePlacedElement(element);
+                writer.end();
+                doc.pagePushBack(page);
+            }
+
+            // Every image position is the matrix that maps the unit square to the image.
+            final List<double[]> page_images = new ArrayList<double[]>();
+            ContentVisitor visitor = new ContentVisitor(ContentVisitor.e_forms);
+            visitor.addConsumer(new ContentVisitor.FormConsumer<List<double[]>>() {
+                public int getTypes() {
+                    return ContentVisitor.typeMask(Element.e_image, Element.e_inline_image);
+                }
+
+                public List<double[]> createFormResult() {
+                    return new ArrayList<double[]>();
+                }
+
+                public void visit(Element element, ContentVisitor.Context ctx) throws Exception {
+                    List<double[]> target = ctx.getFormResult(this);
+                    (target != null ? target : page_images).add(
+                            ContentVisitor.concat(ContentVisitor.toArray(element.getCTM()), ctx.getFormMatrix()));
+                }
+
+                public void place(List<double[]> images, double[] matrix, ContentVisitor.Context ctx) {
+                    List<double[]> target = ctx.getFormResult(this);
+                    for (double[] m : images) {
+                        (target != null ? target : page_images).add(ContentVisitor.concat(m, matrix));
+                    }
+                }
+            });
+
+            long start = System.nanoTime();
+            int count = 0;
+            double[] corner = new double[2];
+            for (PageIterator itr = doc.getPageIterator(); itr.hasNext(); ) {
+                Page page = itr.next();
+                page_images.clear();
+                visitor.visit(page);
+                count += page_images.size();
+                if (page.getIndex() % 10 == 0 && !page_images.isEmpty()) {
+                    ContentVisitor.transform(page_images.get(0), 1, 1, corner, 0);
+                    double[] m = page_images.get(0);
+                    System.out.println(String.format("  page %d: first image at x1=%.2f, y1=%.2f, x2=%.2f, y2=%.2f",
+                            page.getIndex(), m[4], m[5], corner[0], corner[1]));
+                }
+            }
+            System.out.println(String.format("Example 2: %d image placements in %.1f ms", count, (System.nanoTime() - start) / 1e6));
+            System.out.println("Example 2: " + visitor.getStats());
+
+            visitor.destroy();
+            doc.close();
+            src.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        //--------------------------------------------------------------------------------
+        // Example 3) Measure the vector graphics of a document: the total length of the
+        // straight segments, in page space, and the area covered by the paths. A single
+        // PathDecoder is reused for all paths, and the bounding boxes are read without
+        // decoding the paths.
+        try {
+            PDFDoc doc = new PDFDoc(input_path + "tiger.pdf");
+            doc.initSecurityHandler();
+
+            final PathDecoder decoder = new PathDecoder(PathDecoder.e_expand_rects | PathDecoder.e_transform);
+            final double[] bbox = new double[4], extent = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+            final double[] length = {0};
+            final int[] segments = {0};
+            ContentVisitor visitor = new ContentVisitor(ContentVisitor.e_forms);
+            visitor.addConsumer(new ContentVisitor.Consumer() {
+                public int getTypes() {
+                    return ContentVisitor.typeMask(Element.e_path);
+                }
+
+                public void visit(Element element, ContentVisitor.Context ctx) throws Exception {
+                    if (element.isClippingPath()) {
+                        return;
+                    }
+                    decoder.decode(element);
+                    byte[] ops = decoder.getOperators();
+                    double[] pts = decoder.getPoints();
+                    double x = 0, y = 0, start_x = 0, start_y = 0;
+                    for (int i = 0, j = 0; i < decoder.getOperatorCount(); ++i) {
+                        switch (ops[i]) {
+                            case PathData.e_moveto:
+                                x = start_x = pts[j];
+                                y = start_y = pts[j + 1];
+                                j += 2;
+                                break;
+                            case PathData.e_lineto:
+                                length[0] += Math.hypot(pts[j] - x, pts[j + 1] - y);
+                                ++segments[0];
+                                x = pts[j];
+                                y = pts[j + 1];
+                                j += 2;
+                                break;
+                            case PathData.e_cubicto:
+                                x = pts[j + 4];
+                                y = pts[j + 5];
+                                j += 6;
+                                break;
+                            case PathData.e_conicto:
+                                x = pts[j + 2];
+                                y = pts[j + 3];
+                                j += 4;
+                                break;
+                            case PathData.e_closepath:
+                                length[0] += Math.hypot(start_x - x, start_y - y);
+                                x = start_x;
+                                y = start_y;
+                                break;
+                        }
+                    }
+
+                    if (PathDecoder.getBBox(element, bbox)) {
+                        extent[0] = Math.min(extent[0], bbox[0]);
+                        extent[1] = Math.min(extent[1], bbox[1]);
+                        extent[2] = Math.max(extent[2], bbox[2]);
+                        extent[3] = Math.max(extent[3], bbox[3]);
+                    }
+                }
+            });
+
+            long start = System.nanoTime();
+            for (PageIterator itr = doc.getPageIterator(); itr.hasNext(); ) {
+                visitor.visit(itr.next());
+            }
+            System.out.println(String.format("Example 3: %d straight segments, %.1f pt long, paths within (%.1f, %.1f, %.1f, %.1f), in %.1f ms",
+                    segments[0], length[0], extent[0], extent[1], extent[2], extent[3], (System.nanoTime() - start) / 1e6));
+            System.out.println("Example 3: " + visitor.getStats());
+
+            visitor.destroy();
+            doc.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        //--------------------------------------------------------------------------------
+        // Example 4) Read the position and Unicode of every glyph of a document, all
+        // glyphs of a text element at once. On the first page the positions are compared
+        // with those from CharIterator, computed as in ElementReaderAdvTest.
+        try {
+            PDFDoc doc = new PDFDoc(input_path + "newsletter.pdf");
+            doc.initSecurityHandler();
+
+            final GlyphDecoder glyphs = new GlyphDecoder(true);
+            final int[] glyph_count = {0};
+            final double[] max_error = {0};
+            final StringBuilder first_line = new StringBuilder();
+            ContentVisitor visitor = new ContentVisitor(ContentVisitor.e_forms);
+            visitor.addConsumer(new ContentVisitor.Consumer() {
+                public int getTypes() {
+                    return ContentVisitor.typeMask(Element.e_text);
+                }
+
+                public void visit(Element element, ContentVisitor.Context ctx) throws Exception {
+                    int n = glyphs.decode(element);
+                    glyph_count[0] += n;
+                    if (first_line.length() < 60) {
+                        first_line.append(glyphs.getText(0, n));
+                    }
+
+                    if (ctx.getPageNumber() == 1) {
+                        double[] mtx = ContentVisitor.concat(ContentVisitor.toArray(element.getTextMatrix()),
+                                ContentVisitor.toArray(element.getCTM()));
+                        double[] p = new double[2];
+                        int i = 0;
+                        for (CharIterator itr = element.getCharIterator(); itr.hasNext(); ++i) {
+                            CharData data = itr.next();
+                            ContentVisitor.transform(mtx, data.getGlyphX(), data.getGlyphY(), p, 0);
+                            if (i < n) {
+                                max_error[0] = Math.max(max_error[0], Math.max(Math.abs(p[0] - glyphs.getX()[i]), Math.abs(p[1] - glyphs.getY()[i])));
+                            }
+                        }
+                        if (i != n) {
+                            System.out.println("  glyph count differs: " + n + " instead of " + i);
+                        }
+                    }
+                }
+            });
+
+            long start = System.nanoTime();
+            for (PageIterator itr = doc.getPageIterator(); itr.hasNext(); ) {
+                visitor.visit(itr.next());
+            }
+            System.out.println(String.format("Example 4: %d glyphs in %.1f ms, largest difference to CharIterator on page 1: %.4f pt",
+                    glyph_count[0], (System.nanoTime() - start) / 1e6, max_error[0]));
+            System.out.println("Example 4: text starts with '" + first_line + "'");
+            System.out.println("Example 4: " + glyphs.getStats());
+
+            visitor.destroy();
+            doc.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        //--------------------------------------------------------------------------------
+        // Example 5) Extract the images of a document in which a logo is stamped on
+        // every page, once as a shared image and once as a copy stored on each page.
+        // Every distinct image is written once, on four threads, and the placements are
+        // listed with their position and effective resolution.
+        try {
+            PDFDoc doc = new PDFDoc(input_path + "newsletter.pdf");
+            doc.initSecurityHandler();
+
+            ElementBuilder builder = new ElementBuilder();
+            ElementWriter writer = new ElementWriter();
+            Image logo = Image.create(doc.getSDFDoc(), input_path + "peppers.jpg");
+            for (PageIterator itr = doc.getPageIterator(); itr.hasNext(); ) {
+                Page page = itr.next();
+                writer.begin(page, ElementWriter.e_overlay, false);
+                writer.writePlacedElement(builder.createImage(logo, 20, 20, 72, 72));
+                Image copy = Image.create(doc.getSDFDoc(), input_path + "peppers.jpg");
+                writer.writePlacedElement(builder.createImage(copy, 520, 20, 36, 36));
+                writer.end();
+            }
+
+            ImageExtractionService service = new ImageExtractionService(4);
+            service.collect(doc);
+            service.export(doc, output_path + "image_extract3_");
+            for (ImageExtractionService.ExtractedImage image : service.getImages()) {
+                System.out.println(String.format("  %s: %dx%d, %d placement(s)",
+                        image.getFileName("image_extract3_"), image.width, image.height, image.getPlacementCount()));
+            }
+            double[] corner = new double[2];
+            for (ImageExtractionService.Placement p : service.getPlacements()) {
+                if (p.page_num == 1) {
+                    ContentVisitor.transform(p.matrix, 1, 1, corner, 0);
+                    System.out.println(String.format("  page %d: image %d at x1=%.2f, y1=%.2f, x2=%.2f, y2=%.2f, %.0fx%.0f dpi",
+                            p.page_num, p.image_id, p.matrix[4], p.matrix[5], corner[0], corner[1], p.dpi_x, p.dpi_y));
+                }
+            }
+            System.out.println("Example 5: " + service.getStats());
+
+            service.shutdown();
+            doc.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        PDFNet.terminate();
+    }
+}
@@ -0,0 +1,250 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.pdftron.common.PDFNetException;
+import com.pdftron.pdf.*;
+import com.pdftron.sdf.Obj;
+
+//---------------------------------------------------------------------------------------
+// GlyphDecoder returns all glyphs of a text element at once, in packed arrays that
+// belong to the decoder and are reused for every element (see ProcessText() in
+// ElementReaderAdvTest for the CharIterator way):
+//
+//   getCharCodes()[i]                       the character code of glyph i
+//   getX()[i], getY()[i]                    its origin, in page space (or text space)
+//   getUnicode()[getUnicodeStart()[i] ..
+//                getUnicodeStart()[i + 1])  its Unicode text, possibly empty
+//
+// for i in [0, getCount()). CharIterator costs several native calls per glyph. For
+// simple fonts (Type1, TrueType and MMType1) the decoder instead reads the string
+// bytes of the element with one call, takes only the origin of the first glyph from
+// CharIterator, and lays out the rest in Java from the font's widths and the text
+// state, as a viewer does. The widths and Unicode mappings are read once per font and
+// cached by the font's object number. Type3 and composite (Type0) fonts, and fonts
+// that are not indirect objects, use CharIterator for every glyph.
+//
+// The font cache lives as long as the decoder; call clearFontCache() before decoding
+// elements of another document.
+//---------------------------------------------------------------------------------------
+public class GlyphDecoder {
+
+    private static final char[] NO_CHARS = new char[0];
+
+    private final boolean page_space;
+    private final Map<Long, FontInfo> fonts = new HashMap<Long, FontInfo>();
+
+    private int count = 0;
+    private int[] codes = new int[64];
+    private double[] xs = new double[64];
+    private double[] ys = new double[64];
+    private int[] uni_start = new int[65];
+    private char[] unicode = new char[64];
+
+    private long fast_elements = 0, slow_elements = 0;
+
+    // With 'page_space' the glyph origins are mapped by the text matrix and the CTM;
+    // otherwise they are in the text space of the element.
+    public GlyphDecoder(boolean page_space) {
+        this.page_space = page_space;
+    }
+
+    // Decodes the glyphs of 'element', an Element.e_text, and returns their number.
+    public int decode(Element element) throws PDFNetException {
+        double[] matrix = null;
+        if (page_space) {
+            matrix = ContentVisitor.concat(ContentVisitor.toArray(element.getTextMatrix()),
+                    ContentVisitor.toArray(element.getCTM()));
+        }
+        return decode(element, matrix);
+    }
+
+    // Decodes the glyphs of 'element' and maps their origins by 'matrix', unless it is
+    // null. The matrix must include the text matrix, e.g. when a consumer has computed
+    // it already.
+    public int decode(Element element, double[] matrix) throws PDFNetException {
+        count = 0;
+        uni_start[0] = 0;
+        GState gs = element.getGState();
+        Font font = gs.getFont();
+        FontInfo info = getFontInfo(font);
+        if (info != null) {
+            ++fast_elements;
+            layout(element, gs, info, matrix);
+        } else {
+            ++slow_elements;
+            iterate(element, font, matrix);
+        }
+        return count;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int[] getCharCodes() {
+        return codes;
+    }
+
+    public double[] getX() {
+        return xs;
+    }
+
+    public double[] getY() {
+        return ys;
+    }
+
+    public char[] getUnicode() {
+        return unicode;
+    }
+
+    // getCount() + 1 offsets into getUnicode().
+    public int[] getUnicodeStart() {
+        return uni_start;
+    }
+
+    // Returns the Unicode text of glyphs [start, end).
+    public String getText(int start, int end) {
+        return new String(unicode, uni_start[start], uni_start[end] - uni_start[start]);
+    }
+
+    public void clearFontCache() {
+        fonts.clear();
+    }
+
+    public String getStats() {
+        return String.format("%d text elements laid out directly, %d through CharIterator, %d fonts cached",
+                fast_elements, slow_elements, fonts.size());
+    }
+
+    //------------------------------------------------------------------------------------
+
+    // Widths (in thousandths of text space units) and Unicode of the 256 codes of a
+    // simple font, read on first use.
+    private static class FontInfo {
+        final Font font;
+        final double[] width = new double[256];
+        final char[][] unicode = new char[256][];
+
+        FontInfo(Obj obj) {
+            this.font = new Font(obj);
+            Arrays.fill(width, Double.NaN);
+        }
+
+        double getWidth(int code) throws PDFNetException {
+            double w = width[code];
+            if (Double.isNaN(w)) {
+                w = width[code] = font.getWidth(code);
+            }
+            return w;
+        }
+
+        char[] getUnicode(int code) throws PDFNetException {
+            char[] u = unicode[code];
+            if (u == null) {
+                u = font.mapToUnicode(code);
+                unicode[code] = u = u != null ? u : NO_CHARS;
+            }
+            return u;
+        }
+    }
+
+    // Returns the cached information for a simple font, or null if the glyphs of the
+    // font have to go through CharIterator.
+    private FontInfo getFontInfo(Font font) throws PDFNetException {
+        Obj obj = font.GetSDFObj();
+        if (obj == null || !obj.isIndirect()) {
+            return null;
+        }
+        long id = (obj.getObjNum() << 16) | obj.getGenNum();
+        FontInfo info = fonts.get(id);
+        if (info == null && !fonts.containsKey(id)) {
+            int type = font.getType();
+            boolean simple = font.isSimple() && type != Font.e_Type3;
+            info = simple ? new FontInfo(obj) : null;
+            fonts.put(id, info); // null: not a simple font
+        }
+        return info;
+    }
+
+    // Lays out the glyphs of a simple font: every glyph advances by
+    // (w / 1000 * font size + char spacing [+ word spacing for code 32]) * horizontal scale.
+    // The origin of the first glyph is read from CharIterator, since it already includes
+    // the TJ adjustment and the text rise.
+    private void layout(Element element, GState gs, FontInfo info, double[] m) throws PDFNetException {
+        byte[] data = element.getTextData();
+        if (data.length == 0) {
+            return;
+        }
+        CharIterator itr = element.getCharIterator();
+        if (!itr.hasNext()) {
+            return;
+        }
+        CharData first = itr.next();
+        double x = first.getGlyphX(), y = first.getGlyphY();
+        double font_size = gs.getFontSize();
+        double char_spacing = gs.getCharSpacing();
+        double word_spacing = gs.getWordSpacing();
+        double h_scale = gs.getHorizontalScale() / 100;
+
+        reserve(data.length);
+        for (byte b : data) {
+            int code = b & 0xFF;
+            addGlyph(code, x, y, m);
+            addUnicode(info.getUnicode(code));
+            double advance = info.getWidth(code) / 1000 * font_size + char_spacing;
+            if (code == 32) {
+                advance += word_spacing;
+            }
+            x += advance * h_scale;
+        }
+    }
+
+    private void iterate(Element element, Font font, double[] m) throws PDFNetException {
+        for (CharIterator itr = element.getCharIterator(); itr.hasNext(); ) {
+            CharData data = itr.next();
+            long code = data.getCharCode();
+            reserve(count + 1);
+            addGlyph((int) code, data.getGlyphX(), data.getGlyphY(), m);
+            char[] u = font.mapToUnicode(code);
+            addUnicode(u != null ? u : NO_CHARS);
+        }
+    }
+
+    private void reserve(int n) {
+        if (n > codes.length) {
+            int capacity = Math.max(n, 2 * codes.length);
+            codes = Arrays.copyOf(codes, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            uni_start = Arrays.copyOf(uni_start, capacity + 1);
+        }
+    }
+
+    private void addGlyph(int code, double x, double y, double[] m) {
+        codes[count] = code;
+        if (m == null) {
+            xs[count] = x;
+            ys[count] = y;
+        } else {
+            xs[count] = m[0] * x + m[2] * y + m[4];
+            ys[count] = m[1] * x + m[3] * y + m[5];
+        }
+        ++count;
+    }
+
+    // Adds the Unicode of the glyph that was added last.
+    private void addUnicode(char[] u) {
+        int start = uni_start[count - 1];
+        if (start + u.length > unicode.length) {
+            unicode = Arrays.copyOf(unicode, Math.max(start + u.length, 2 * unicode.length));
+        }
+        System.arraycopy(u, 0, unicode, start, u.length);
+        uni_start[count] = start + u.length;
+    }
+}
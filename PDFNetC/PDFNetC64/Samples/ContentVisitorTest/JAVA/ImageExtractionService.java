@@ -0,0 +1,340 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.pdftron.common.PDFNetException;
+import com.pdftron.filters.Filter;
+import com.pdftron.filters.FilterReader;
+import com.pdftron.pdf.*;
+import com.pdftron.sdf.DictIterator;
+import com.pdftron.sdf.Obj;
+
+//---------------------------------------------------------------------------------------
+// ImageExtractionService extracts every distinct image of a document once, however
+// often it is placed (see ImageExtractTest, which exports an image per placement).
+//
+// collect() reads all pages with a ContentVisitor and records the image XObjects and
+// where they are placed: page, the matrix that maps the unit square to the image on
+// the page, and the effective resolution. Form XObjects are memoized, so a logo in a
+// form that is shown on every page is read once. Images are deduplicated first by
+// object number and then by a SHA-1 hash of the image dictionary and the raw (still
+// encoded) stream data, which catches copies of an image stored as separate objects.
+//
+// export() then writes the distinct images with Image.export() on a pool of worker
+// threads, each holding a read lock on the document while it decodes its image.
+// Inline images are counted but not exported, as in ImageExtractTest.
+//---------------------------------------------------------------------------------------
+public class ImageExtractionService {
+
+    // A distinct image.
+    public static class ExtractedImage {
+        public final int id;            // index in getImages()
+        public final long obj_num;      // of the first image XObject with this content
+        public final int width, height;
+        public final String hash;       // of the dictionary and raw stream
+        int placement_count = 0;
+        int format = -1;                // see Image.export()
+
+        ExtractedImage(int id, long obj_num, int width, int height, String hash) {
+            this.id = id;
+            this.obj_num = obj_num;
+            this.width = width;
+            this.height = height;
+            this.hash = hash;
+        }
+
+        public int getPlacementCount() {
+            return placement_count;
+        }
+
+        // The file written by export(), or null.
+        public String getFileName(String prefix) {
+            switch (format) {
+                case 0: return prefix + id + ".png";
+                case 1: return prefix + id + ".tif";
+                case 2: return prefix + id + ".jpg";
+                default: return null;
+            }
+        }
+    }
+
+    // A placement of an image on a page.
+    public static class Placement {
+        public final int page_num;
+        public final int image_id;
+        public final double[] matrix;   // unit square to page space, {a, b, c, d, h, v}
+        public final double dpi_x, dpi_y;
+
+        Placement(int page_num, ExtractedImage image, double[] matrix) {
+            this.page_num = page_num;
+            this.image_id = image.id;
+            this.matrix = matrix;
+            // The image is image.width pixels along the placed x axis of the unit square.
+            this.dpi_x = image.width * 72 / Math.hypot(matrix[0], matrix[1]);
+            this.dpi_y = image.height * 72 / Math.hypot(matrix[2], matrix[3]);
+        }
+    }
+
+    // An image within a form XObject, relative to the form.
+    private static class FormImage {
+        final ExtractedImage image;
+        final double[] matrix;
+
+        FormImage(ExtractedImage image, double[] matrix) {
+            this.image = image;
+            this.matrix = matrix;
+        }
+    }
+
+    private final int concurrency;
+    private final ExecutorService executor;
+
+    private final List<ExtractedImage> images = new ArrayList<ExtractedImage>();
+    private final List<Placement> placements = new ArrayList<Placement>();
+    private final Map<Long, ExtractedImage> by_obj = new HashMap<Long, ExtractedImage>();
+    private final Map<String, ExtractedImage> by_hash = new HashMap<String, ExtractedImage>();
+    private int inline_count = 0, image_objects = 0;
+    private long bytes_hashed = 0;
+    private double collect_millis = 0, export_millis = 0;
+
+    public ImageExtractionService(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+        this.concurrency = concurrency;
+        executor = Executors.newFixedThreadPool(concurrency);
+    }
+
+    // Finds the images of all pages of the document and their placements, replacing
+    // those of the previous call.
+    public void collect(PDFDoc doc) throws Exception {
+        long start = System.nanoTime();
+        images.clear();
+        placements.clear();
+        by_obj.clear();
+        by_hash.clear();
+        inline_count = 0;
+        image_objects = 0;
+        bytes_hashed = 0;
+
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        final byte[] buf = new byte[64 * 1024];
+
+        ContentVisitor visitor = new ContentVisitor(ContentVisitor.e_forms);
+        visitor.addConsumer(new ContentVisitor.FormConsumer<List<FormImage>>() {
+            public int getTypes() {
+                return ContentVisitor.typeMask(Element.e_image, Element.e_inline_image);
+            }
+
+            public List<FormImage> createFormResult() {
+                return new ArrayList<FormImage>();
+            }
+
+            public void visit(Element element, ContentVisitor.Context ctx) throws Exception {
+                if (element.getType() == Element.e_inline_image) {
+                    ++inline_count;
+                    return;
+                }
+                ExtractedImage image = getImage(element, md, buf);
+                double[] matrix = ContentVisitor.concat(ContentVisitor.toArray(element.getCTM()), ctx.getFormMatrix());
+                List<FormImage> form = ctx.getFormResult(this);
+                if (form != null) {
+                    form.add(new FormImage(image, matrix));
+                } else {
+                    addPlacement(ctx.getPageNumber(), image, matrix);
+                }
+            }
+
+            public void place(List<FormImage> result, double[] matrix, ContentVisitor.Context ctx) {
+                List<FormImage> form = ctx.getFormResult(this);
+                for (FormImage fi : result) {
+                    double[] m = ContentVisitor.concat(fi.matrix, matrix);
+                    if (form != null) {
+                        form.add(new FormImage(fi.image, m));
+                    } else {
+                        addPlacement(ctx.getPageNumber(), fi.image, m);
+                    }
+                }
+            }
+        });
+
+        doc.lockRead();
+        try {
+            for (PageIterator itr = doc.getPageIterator(); itr.hasNext(); ) {
+                visitor.visit(itr.next());
+            }
+        } finally {
+            doc.unlockRead();
+            visitor.destroy();
+        }
+        collect_millis = (System.nanoTime() - start) / 1e6;
+    }
+
+    // Writes every distinct image to '<prefix><id>.<ext>' on the worker threads.
+    public void export(final PDFDoc doc, final String prefix) throws Exception {
+        long start = System.nanoTime();
+        List<Future<?>> pending = new ArrayList<Future<?>>();
+        try {
+            for (final ExtractedImage image : images) {
+                pending.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        doc.lockRead();
+                        try {
+                            Image img = new Image(doc.getSDFDoc().getObj(image.obj_num));
+                            image.format = img.export(prefix + image.id);
+                        } finally {
+                            doc.unlockRead();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> f : pending) {
+                await(f);
+            }
+        } finally {
+            for (Future<?> f : pending) {
+                f.cancel(false);
+            }
+        }
+        export_millis = (System.nanoTime() - start) / 1e6;
+    }
+
+    public List<ExtractedImage> getImages() {
+        return Collections.unmodifiableList(images);
+    }
+
+    // The placements in page order.
+    public List<Placement> getPlacements() {
+        return Collections.unmodifiableList(placements);
+    }
+
+    public String getStats() {
+        return String.format("%d placements of %d image objects, %d distinct images (%d bytes hashed), %d inline images, " +
+                        "collected in %.1f ms, exported on %d threads in %.1f ms",
+                placements.size(), image_objects, images.size(), bytes_hashed, inline_count,
+                collect_millis, concurrency, export_millis);
+    }
+
+    // Stops the worker threads.
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    //------------------------------------------------------------------------------------
+
+    private void addPlacement(int page_num, ExtractedImage image, double[] matrix) {
+        placements.add(new Placement(page_num, image, matrix));
+        ++image.placement_count;
+    }
+
+    // Returns the distinct image of an image element, hashing the XObject the first
+    // time it is seen.
+    private ExtractedImage getImage(Element element, MessageDigest md, byte[] buf) throws PDFNetException {
+        Obj xobj = element.getXObject();
+        long id = (xobj.getObjNum() << 16) | xobj.getGenNum();
+        ExtractedImage image = by_obj.get(id);
+        if (image != null) {
+            return image;
+        }
+        ++image_objects;
+
+        md.reset();
+        putObj(md, xobj, 0);
+        Filter filter = xobj.getRawStream(false);
+        FilterReader reader = new FilterReader(filter);
+        long n;
+        while ((n = reader.read(buf)) > 0) {
+            md.update(buf, 0, (int) n);
+            bytes_hashed += n;
+        }
+        reader.destroy();
+        filter.destroy();
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        String hash = sb.toString();
+
+        image = by_hash.get(hash);
+        if (image == null) {
+            image = new ExtractedImage(images.size(), xobj.getObjNum(), element.getImageWidth(), element.getImageHeight(), hash);
+            images.add(image);
+            by_hash.put(hash, image);
+        }
+        by_obj.put(id, image);
+        return image;
+    }
+
+    // Hashes the image dictionary. Indirect objects below it (e.g. an ICC color space
+    // or a soft mask) are identified by their object number rather than followed.
+    private static void putObj(MessageDigest md, Obj obj, int depth) throws PDFNetException {
+        if (depth > 0 && obj.isIndirect()) {
+            md.update((byte) 'R');
+            putString(md, obj.getObjNum() + " " + obj.getGenNum());
+            return;
+        }
+        int type = obj.getType();
+        md.update((byte) type);
+        if (type == Obj.e_bool) {
+            md.update((byte) (obj.getBool() ? 1 : 0));
+        } else if (type == Obj.e_number) {
+            putString(md, Double.toString(obj.getNumber()));
+        } else if (type == Obj.e_name) {
+            putString(md, obj.getName());
+        } else if (type == Obj.e_string) {
+            byte[] b = obj.getBuffer();
+            putString(md, Integer.toString(b.length));
+            md.update(b);
+        } else if (type == Obj.e_array) {
+            int n = (int) obj.size();
+            putString(md, Integer.toString(n));
+            for (int i = 0; i < n; ++i) {
+                putObj(md, obj.getAt(i), depth + 1);
+            }
+        } else if (type == Obj.e_dict || type == Obj.e_stream) {
+            for (DictIterator itr = obj.getDictIterator(); itr.hasNext(); itr.next()) {
+                putString(md, itr.key().getName());
+                putObj(md, itr.value(), depth + 1);
+            }
+        }
+    }
+
+    private static void putString(MessageDigest md, String s) {
+        for (int i = 0; i < s.length(); ++i) {
+            md.update((byte) s.charAt(i));
+        }
+        md.update((byte) 0);
+    }
+
+    private static void await(Future<?> future) throws Exception {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+}
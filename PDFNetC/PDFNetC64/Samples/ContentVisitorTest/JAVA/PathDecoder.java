@@ -0,0 +1,184 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.util.Arrays;
+
+import com.pdftron.common.PDFNetException;
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// PathDecoder decodes the path data of path elements (see ProcessPath() in
+// ElementReaderAdvTest) into operator and point buffers that belong to the decoder and
+// are reused for every path. Element.getPathData() still returns a new PathData with
+// its own operator and point arrays for every path, which the decoder then copies;
+// only the decoder's output buffers are reused, so consumers can keep working on the
+// same arrays. The buffers only grow; they hold the last decoded path:
+//
+//   getOperators()[0 .. getOperatorCount())  PathData.e_moveto, e_lineto, ...
+//   getPoints()[0 .. getPointCount())        x, y pairs, as many as the operators take
+//
+// Options:
+//   e_expand_rects  rectangles (PathData.e_rect, x y w h) become moveto, three linetos
+//                   and closepath, so consumers only have to handle lines and curves
+//   e_transform     points are mapped by the element's CTM to page space; rectangles
+//                   are always expanded then, since they need not stay rectangles
+//
+// When only the extent of paths matters, use the static getBBox() instead of decode().
+// It returns the bounding box from a single native call and never calls getPathData(),
+// so the per-path PathData and its arrays are not created at all.
+//---------------------------------------------------------------------------------------
+public class PathDecoder {
+
+    // Options
+    public static final int e_expand_rects = 1;
+    public static final int e_transform = 2;
+
+    private final int options;
+    private byte[] ops = new byte[64];
+    private double[] points = new double[256];
+    private int op_count = 0, point_count = 0;
+
+    public PathDecoder(int options) {
+        this.options = options;
+    }
+
+    // Decodes the path of 'element', an Element.e_path. With e_transform the points
+    // are mapped by the element's CTM.
+    public void decode(Element element) throws PDFNetException {
+        double[] matrix = (options & e_transform) != 0 ? ContentVisitor.toArray(element.getCTM()) : null;
+        decode(element.getPathData(), matrix);
+    }
+
+    // Decodes 'path', mapping the points by 'matrix' ({a, b, c, d, h, v}) unless it is
+    // null, e.g. when the CTM is known already (see ContentVisitor.Context).
+    public void decode(PathData path, double[] matrix) {
+        byte[] src_ops = path.getOperators();
+        double[] src = path.getPoints();
+        boolean expand = (options & e_expand_rects) != 0;
+
+        op_count = 0;
+        point_count = 0;
+        int i = 0;
+        for (byte op : src_ops) {
+            switch (op) {
+                case PathData.e_moveto:
+                case PathData.e_lineto:
+                    addOp(op);
+                    addPoint(src[i], src[i + 1], matrix);
+                    i += 2;
+                    break;
+                case PathData.e_cubicto:
+                    addOp(op);
+                    addPoint(src[i], src[i + 1], matrix);
+                    addPoint(src[i + 2], src[i + 3], matrix);
+                    addPoint(src[i + 4], src[i + 5], matrix);
+                    i += 6;
+                    break;
+                case PathData.e_conicto:
+                    addOp(op);
+                    addPoint(src[i], src[i + 1], matrix);
+                    addPoint(src[i + 2], src[i + 3], matrix);
+                    i += 4;
+                    break;
+                case PathData.e_rect: {
+                    double x = src[i], y = src[i + 1], w = src[i + 2], h = src[i + 3];
+                    i += 4;
+                    if (expand || matrix != null) {
+                        addOp(PathData.e_moveto);
+                        addPoint(x, y, matrix);
+                        addOp(PathData.e_lineto);
+                        addPoint(x + w, y, matrix);
+                        addOp(PathData.e_lineto);
+                        addPoint(x + w, y + h, matrix);
+                        addOp(PathData.e_lineto);
+                        addPoint(x, y + h, matrix);
+                        addOp(PathData.e_closepath);
+                    } else {
+                        addOp(op);
+                        addPoint(x, y, null);
+                        addPoint(w, h, null);
+                    }
+                    break;
+                }
+                case PathData.e_closepath:
+                    addOp(op);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown path operator " + op);
+            }
+        }
+    }
+
+    public byte[] getOperators() {
+        return ops;
+    }
+
+    public int getOperatorCount() {
+        return op_count;
+    }
+
+    public double[] getPoints() {
+        return points;
+    }
+
+    // The number of coordinates (twice the number of points) in getPoints().
+    public int getPointCount() {
+        return point_count;
+    }
+
+    // Stores the bounds of the decoded points in 'bbox' as {x1, y1, x2, y2} and returns
+    // false if the path is empty. Curve control points are included, so the box can
+    // be larger than the curves. Not meaningful for unexpanded rectangles.
+    public boolean getBounds(double[] bbox) {
+        if (point_count == 0) {
+            return false;
+        }
+        double x1 = points[0], y1 = points[1], x2 = x1, y2 = y1;
+        for (int i = 2; i < point_count; i += 2) {
+            double x = points[i], y = points[i + 1];
+            if (x < x1) x1 = x;
+            else if (x > x2) x2 = x;
+            if (y < y1) y1 = y;
+            else if (y > y2) y2 = y;
+        }
+        bbox[0] = x1;
+        bbox[1] = y1;
+        bbox[2] = x2;
+        bbox[3] = y2;
+        return true;
+    }
+
+    // Bounding box only: stores the page space bounding box of 'element' in 'bbox' as
+    // {x1, y1, x2, y2} without decoding its path, and returns false if it has none.
+    public static boolean getBBox(Element element, double[] bbox) throws PDFNetException {
+        Rect r = element.getBBox();
+        if (r == null) {
+            return false;
+        }
+        System.arraycopy(r.get(), 0, bbox, 0, 4);
+        return true;
+    }
+
+    private void addOp(int op) {
+        if (op_count == ops.length) {
+            ops = Arrays.copyOf(ops, 2 * ops.length);
+        }
+        ops[op_count++] = (byte) op;
+    }
+
+    private void addPoint(double x, double y, double[] m) {
+        if (point_count + 2 > points.length) {
+            points = Arrays.copyOf(points, 2 * points.length);
+        }
+        if (m == null) {
+            points[point_count] = x;
+            points[point_count + 1] = y;
+        } else {
+            points[point_count] = m[0] * x + m[2] * y + m[4];
+            points[point_count + 1] = m[1] * x + m[3] * y + m[5];
+        }
+        point_count += 2;
+    }
+}
@@ -0,0 +1,4 @@
+#!/bin/sh
+TEST_NAME=ContentVisitorTest
+javac -cp ../../../Lib/PDFNet.jar *.java
+java -Djava.library.path=../../../Lib -cp .:../../../Lib/PDFNet.jar $TEST_NAME
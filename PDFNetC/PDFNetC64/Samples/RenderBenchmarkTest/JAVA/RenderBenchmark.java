@@ -0,0 +1,157 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//---------------------------------------------------------------------------------------
+// A small benchmark harness for rendering workloads. Every benchmark runs a number of
+// warm-up iterations followed by measured iterations, and reports the throughput in
+// pages per second and the Java heap allocation per page.
+//
+// Allocation is measured on the benchmarking thread through the HotSpot specific
+// com.sun.management.ThreadMXBean, and is reported as -1 on other JVMs. Memory that is
+// allocated by PDFNet itself (native memory) is not included.
+//
+// Results can be saved as CSV and compared against a previous run, for example to
+// check for rendering regressions after upgrading PDFNet.
+//---------------------------------------------------------------------------------------
+public class RenderBenchmark {
+
+    // One unit of work. Returns the number of pages that were rendered.
+    public interface Workload {
+        int run() throws Exception;
+    }
+
+    public static class Result {
+        public final String name;
+        public final double pages_per_sec;
+        public final double pages_per_sec_error;
+        public final double bytes_per_page;
+
+        Result(String name, double pages_per_sec, double pages_per_sec_error, double bytes_per_page) {
+            this.name = name;
+            this.pages_per_sec = pages_per_sec;
+            this.pages_per_sec_error = pages_per_sec_error;
+            this.bytes_per_page = bytes_per_page;
+        }
+    }
+
+    private final int warmup_iterations;
+    private final int measure_iterations;
+    private final List<Result> results = new ArrayList<Result>();
+
+    public RenderBenchmark(int warmup_iterations, int measure_iterations) {
+        this.warmup_iterations = warmup_iterations;
+        this.measure_iterations = measure_iterations;
+    }
+
+    public Result run(String name, Workload workload) throws Exception {
+        for (int i = 0; i < warmup_iterations; ++i) {
+            workload.run();
+        }
+
+        double[] samples = new double[measure_iterations];
+        long total_pages = 0;
+        long alloc_start = getAllocatedBytes();
+        for (int i = 0; i < measure_iterations; ++i) {
+            long start = System.nanoTime();
+            int pages = workload.run();
+            long elapsed = System.nanoTime() - start;
+            samples[i] = elapsed > 0 ? pages * 1e9 / elapsed : 0;
+            total_pages += pages;
+        }
+        long alloc_end = getAllocatedBytes();
+
+        double mean = 0;
+        for (double s : samples) {
+            mean += s;
+        }
+        mean /= samples.length;
+        double var = 0;
+        for (double s : samples) {
+            var += (s - mean) * (s - mean);
+        }
+        double stdev = samples.length > 1 ? Math.sqrt(var / (samples.length - 1)) : 0;
+        double bytes_per_page = (alloc_start < 0 || total_pages == 0) ? -1 : (double) (alloc_end - alloc_start) / total_pages;
+
+        Result result = new Result(name, mean, stdev, bytes_per_page);
+        results.add(result);
+        System.out.println(String.format("%-48s %10.2f +- %8.2f pages/sec %14.0f B/page",
+                name, result.pages_per_sec, result.pages_per_sec_error, result.bytes_per_page));
+        return result;
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    public void save(String path) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(path));
+        try {
+            out.println("benchmark,pages_per_sec,pages_per_sec_error,bytes_per_page");
+            for (Result r : results) {
+                out.println(r.name + "," + r.pages_per_sec + "," + r.pages_per_sec_error + "," + r.bytes_per_page);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    // Compares the results against a CSV file written by save(). Prints every benchmark
+    // whose throughput dropped by more than 'tolerance' (e.g. 0.1 for 10%) and returns
+    // the number of such regressions.
+    public int compare(String baseline_path, double tolerance) throws IOException {
+        Map<String, Double> baseline = new HashMap<String, Double>();
+        BufferedReader in = new BufferedReader(new FileReader(baseline_path));
+        try {
+            in.readLine(); // header
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] cols = line.split(",");
+                if (cols.length >= 2) {
+                    baseline.put(cols[0], Double.parseDouble(cols[1]));
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        int regressions = 0;
+        for (Result r : results) {
+            Double base = baseline.get(r.name);
+            if (base == null || base <= 0) {
+                continue;
+            }
+            double change = (r.pages_per_sec - base) / base;
+            if (change < -tolerance) {
+                ++regressions;
+                System.out.println(String.format("REGRESSION %-37s %10.2f -> %10.2f pages/sec (%+.1f%%)",
+                        r.name, base, r.pages_per_sec, change * 100));
+            }
+        }
+        return regressions;
+    }
+
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,168 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.io.File;
+
+import com.pdftron.common.Matrix2D;
+import com.pdftron.common.PDFNetException;
+import com.pdftron.pdf.*;
+import com.pdftron.sdf.Obj;
+import com.pdftron.sdf.ObjSet;
+
+//---------------------------------------------------------------------------------------
+// The following sample benchmarks PDFDraw and PDFRasterizer on the bundled test files.
+// It measures PDFDraw.export() for PNG, JPEG and TIFF output, PDFRasterizer.rasterize()
+// at different resolutions, the image smoothing and overprint settings, and the
+// monochrome, grayscale, CMYK and separation hints used in PDFDrawTest.
+//
+// Usage: RenderBenchmarkTest [baseline.csv]
+//
+// The results are saved to TestFiles/Output/render_benchmark.csv. If a baseline file
+// from an earlier run (e.g. with a previous PDFNet version) is given, benchmarks that
+// became more than 10% slower are reported as regressions.
+//---------------------------------------------------------------------------------------
+public class RenderBenchmarkTest {
+
+    // Relative path to the folder containing test files.
+    static String input_path = "../../TestFiles/";
+    static String output_path = "../../TestFiles/Output/";
+
+    // Exports every page of the document with the given draw settings.
+    static RenderBenchmark.Workload export(final PDFDoc doc, final PDFDraw draw, final String format, final Obj hints) {
+        final String path = output_path + "render_benchmark." + format.toLowerCase();
+        return new RenderBenchmark.Workload() {
+            public int run() throws PDFNetException {
+                int pages = 0;
+                for (PageIterator itr = doc.getPageIterator(); itr.hasNext(); ++pages) {
+                    Page page = itr.next();
+                    if (hints != null) {
+                        draw.export(page, path, format, hints);
+                    } else {
+                        draw.export(page, path, format);
+                    }
+                }
+                return pages;
+            }
+        };
+    }
+
+    // Rasterizes every page of the document into a BGRA buffer at the given DPI.
+    static RenderBenchmark.Workload rasterize(final PDFDoc doc, final PDFRasterizer rast, final double dpi) {
+        return new RenderBenchmark.Workload() {
+            public int run() throws PDFNetException {
+                int pages = 0;
+                double scale = dpi / 72.0; // PDF space is 72 dpi
+                int box = Page.e_crop;
+                for (PageIterator itr = doc.getPageIterator(); itr.hasNext(); ++pages) {
+                    Page page = itr.next();
+                    int w = (int) Math.floor(scale * page.getPageWidth(box));
+                    int h = (int) Math.floor(scale * page.getPageHeight(box));
+                    Matrix2D mtx = (new Matrix2D(scale, 0, 0, scale, 0, 0)).multiply(page.getDefaultMatrix(true, box, 0));
+                    rast.rasterize(page, w, h, w * 4, 4, true, mtx, null);
+                }
+                return pages;
+            }
+        };
+    }
+
+    static PDFDoc open(String file_name) throws PDFNetException {
+        PDFDoc doc = new PDFDoc(input_path + file_name);
+        // Initialize the security handler, in case the PDF is encrypted.
+        doc.initSecurityHandler();
+        return doc;
+    }
+
+    public static void main(String[] args) {
+        PDFNet.initialize();
+
+        try {
+            RenderBenchmark bench = new RenderBenchmark(2, 5);
+            ObjSet hint_set = new ObjSet();
+
+            PDFDoc tiger = open("tiger.pdf");
+            PDFDoc newsletter = open("newsletter.pdf");
+            PDFDoc lorem = open("lorem_ipsum.pdf");
+            PDFDoc op_blend = open("op_blend_test.pdf");
+
+            //--------------------------------------------------------------------------------
+            // PDFDraw.export() for different output formats at 92 DPI.
+            PDFDraw draw = new PDFDraw();
+            draw.setDPI(92);
+            String[] formats = {"PNG", "JPEG", "TIFF"};
+            for (String format : formats) {
+                bench.run("export/" + format + "/tiger/92dpi", export(tiger, draw, format, null));
+                bench.run("export/" + format + "/newsletter/92dpi", export(newsletter, draw, format, null));
+                bench.run("export/" + format + "/lorem_ipsum/92dpi", export(lorem, draw, format, null));
+            }
+
+            //--------------------------------------------------------------------------------
+            // Output color space hints, as used in PDFDrawTest Examples 4, 7 and 10.
+            Obj mono_hint = hint_set.createDict();
+            mono_hint.putNumber("BPC", 1);
+            Obj gray_hint = hint_set.createDict();
+            gray_hint.putName("ColorSpace", "Gray");
+            Obj cmyk_hint = hint_set.createDict();
+            cmyk_hint.putName("ColorSpace", "CMYK");
+            Obj separation_hint = hint_set.createDict();
+            separation_hint.putName("ColorSpace", "Separation");
+
+            bench.run("export/PNG/tiger/92dpi/mono", export(tiger, draw, "PNG", mono_hint));
+            bench.run("export/PNG/tiger/92dpi/gray", export(tiger, draw, "PNG", gray_hint));
+            bench.run("export/TIFF/tiger/92dpi/cmyk", export(tiger, draw, "TIFF", cmyk_hint));
+            bench.run("export/TIFF/op_blend_test/92dpi/separation", export(op_blend, draw, "TIFF", separation_hint));
+
+            //--------------------------------------------------------------------------------
+            // Image smoothing (PDFDrawTest Example 9) and overprint (Example 10).
+            draw.setDPI(150);
+            draw.setImageSmoothing(false, false);
+            bench.run("export/PNG/lorem_ipsum/150dpi/no_smoothing", export(lorem, draw, "PNG", null));
+            draw.setImageSmoothing(true, false);
+            bench.run("export/PNG/lorem_ipsum/150dpi/smoothing", export(lorem, draw, "PNG", null));
+            draw.setImageSmoothing(true, true);
+            bench.run("export/PNG/lorem_ipsum/150dpi/hq_smoothing", export(lorem, draw, "PNG", null));
+
+            draw.setDPI(96);
+            draw.setOverprint(0);
+            bench.run("export/PNG/op_blend_test/96dpi/overprint_off", export(op_blend, draw, "PNG", null));
+            draw.setOverprint(1);
+            bench.run("export/PNG/op_blend_test/96dpi/overprint_on", export(op_blend, draw, "PNG", null));
+            draw.destroy();
+
+            //--------------------------------------------------------------------------------
+            // PDFRasterizer.rasterize() into memory at different resolutions.
+            PDFRasterizer rast = new PDFRasterizer();
+            double[] resolutions = {72, 150, 300};
+            for (double dpi : resolutions) {
+                bench.run("rasterize/tiger/" + (int) dpi + "dpi", rasterize(tiger, rast, dpi));
+                bench.run("rasterize/newsletter/" + (int) dpi + "dpi", rasterize(newsletter, rast, dpi));
+            }
+            rast.setImageSmoothing(false, false);
+            bench.run("rasterize/lorem_ipsum/150dpi/no_smoothing", rasterize(lorem, rast, 150));
+            rast.setImageSmoothing(true, true);
+            bench.run("rasterize/lorem_ipsum/150dpi/hq_smoothing", rasterize(lorem, rast, 150));
+            rast.setOverprint(1);
+            bench.run("rasterize/op_blend_test/96dpi/overprint_on", rasterize(op_blend, rast, 96));
+            rast.destroy();
+
+            tiger.close();
+            newsletter.close();
+            lorem.close();
+            op_blend.close();
+
+            bench.save(output_path + "render_benchmark.csv");
+            System.out.println("Results saved to render_benchmark.csv");
+
+            if (args.length > 0 && new File(args[0]).exists()) {
+                int regressions = bench.compare(args[0], 0.10);
+                System.out.println(regressions + " regression(s) compared to " + args[0]);
+            }
+            System.out.println("Done.");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        PDFNet.terminate();
+    }
+}
@@ -0,0 +1,145 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.pdftron.common.PDFNetException;
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// AdaptiveRenderer renders pages within a latency budget instead of at a fixed DPI.
+//
+// The first time a page is seen it is rendered at a low 'probe' resolution, and the
+// time it took is recorded as the page complexity, in milliseconds per megapixel.
+// From the complexity the renderer estimates how long the page would take at the
+// target resolution. If that fits into what is left of the budget, the page is
+// rendered at full quality; otherwise it is rendered at the highest resolution that
+// is expected to fit, or the probe result is returned as is.
+//
+// Complexities are remembered per page, so later requests for the same page skip the
+// probe and go straight to the best resolution the budget allows. Simple text pages
+// are therefore served at full quality, while heavy pages (e.g. tiger.pdf at 900 DPI)
+// degrade gracefully instead of stalling the calling thread.
+//---------------------------------------------------------------------------------------
+public class AdaptiveRenderer {
+
+    public static class Result {
+        public final BufferedImage image;
+        public final double dpi;               // the resolution that was achieved
+        public final boolean full_quality;     // true if rendered at the target resolution
+        public final double ms_per_megapixel;  // the measured page complexity
+        public final double elapsed_ms;        // total time spent, including the probe
+
+        Result(BufferedImage image, double dpi, boolean full_quality, double ms_per_megapixel, double elapsed_ms) {
+            this.image = image;
+            this.dpi = dpi;
+            this.full_quality = full_quality;
+            this.ms_per_megapixel = ms_per_megapixel;
+            this.elapsed_ms = elapsed_ms;
+        }
+    }
+
+    // Re-rendering at less than this multiple of the resolution we already have is not
+    // worth the time.
+    private static final double MIN_IMPROVEMENT = 1.25;
+
+    private final double probe_dpi;
+    private final ConcurrentHashMap<String, Double> complexities = new ConcurrentHashMap<String, Double>();
+    private final AtomicLong full_quality_pages = new AtomicLong();
+    private final AtomicLong degraded_pages = new AtomicLong();
+    private final AtomicLong probes = new AtomicLong();
+
+    public AdaptiveRenderer(double probe_dpi) {
+        this.probe_dpi = probe_dpi;
+    }
+
+    // Renders the page at 'target_dpi', or at a lower resolution if the page is not
+    // expected to render within 'budget_ms' milliseconds. 'doc_key' identifies the
+    // document (e.g. RenderCache.hashFile()) for the purpose of remembering page
+    // complexities. 'draw' must not be used by other threads at the same time.
+    public Result render(PDFDraw draw, Page page, String doc_key, double target_dpi, double budget_ms) throws PDFNetException {
+        long start = System.nanoTime();
+        String key = doc_key + "#" + page.getIndex();
+        double area = page.getPageWidth(Page.e_crop) * page.getPageHeight(Page.e_crop); // in points
+
+        BufferedImage best = null;
+        double best_dpi = 0;
+        Double complexity = complexities.get(key);
+        if (complexity == null) {
+            probes.incrementAndGet();
+            best_dpi = Math.min(probe_dpi, target_dpi);
+            best = renderAt(draw, page, key, best_dpi);
+            complexity = complexities.get(key);
+        }
+
+        double remaining = budget_ms - elapsedMillis(start);
+        double dpi = Math.min(target_dpi, getAffordableDPI(area, complexity, remaining));
+        if (best == null || (dpi >= target_dpi || dpi >= best_dpi * MIN_IMPROVEMENT)) {
+            if (best == null) {
+                // Something has to be returned, even if the budget is already exceeded.
+                dpi = Math.max(dpi, Math.min(probe_dpi, target_dpi));
+            }
+            best = renderAt(draw, page, key, dpi);
+            best_dpi = dpi;
+        }
+
+        boolean full_quality = best_dpi >= target_dpi;
+        (full_quality ? full_quality_pages : degraded_pages).incrementAndGet();
+        return new Result(best, best_dpi, full_quality, complexities.get(key), elapsedMillis(start));
+    }
+
+    // Same as above, but the target is given as the maximum image size, as in
+    // PDFDraw.setImageSize(width, height, true).
+    public Result render(PDFDraw draw, Page page, String doc_key, int width, int height, double budget_ms) throws PDFNetException {
+        double dpi = 72 * Math.min(width / page.getPageWidth(Page.e_crop), height / page.getPageHeight(Page.e_crop));
+        return render(draw, page, doc_key, dpi, budget_ms);
+    }
+
+    // Returns the recorded complexity of a page in milliseconds per megapixel, or -1 if
+    // the page has not been rendered yet.
+    public double getComplexity(String doc_key, int page_num) {
+        Double c = complexities.get(doc_key + "#" + page_num);
+        return c == null ? -1 : c;
+    }
+
+    public String getStats() {
+        return String.format("full quality=%d, degraded=%d, probes=%d, known pages=%d",
+                full_quality_pages.get(), degraded_pages.get(), probes.get(), complexities.size());
+    }
+
+    private BufferedImage renderAt(PDFDraw draw, Page page, String key, double dpi) throws PDFNetException {
+        draw.setDPI(dpi);
+        long start = System.nanoTime();
+        BufferedImage image = draw.getBitmap(page);
+        double ms = elapsedMillis(start);
+
+        double megapixels = Math.max(1e-3, (double) image.getWidth() * image.getHeight() / 1e6);
+        double measured = ms / megapixels;
+        Double old = complexities.get(key);
+        // Smooth out timer noise and caching effects with an exponential moving average.
+        complexities.put(key, old == null ? measured : 0.5 * (old + measured));
+        return image;
+    }
+
+    // Returns the highest resolution at which a page of 'area' square points is expected
+    // to render within 'budget_ms', given its complexity.
+    private static double getAffordableDPI(double area, double ms_per_megapixel, double budget_ms) {
+        if (budget_ms <= 0) {
+            return 0;
+        }
+        if (ms_per_megapixel <= 0) {
+            return Double.MAX_VALUE;
+        }
+        double megapixels = budget_ms / ms_per_megapixel;
+        // At 'dpi' the page is area * (dpi / 72)^2 pixels.
+        return 72 * Math.sqrt(megapixels * 1e6 / area);
+    }
+
+    private static double elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1e6;
+    }
+}
@@ -0,0 +1,164 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.pdftron.common.Matrix2D;
+import com.pdftron.common.PDFNetException;
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// DirectRasterizer renders pages into caller supplied (typically direct or memory
+// mapped) ByteBuffers, so that the finished frames can be kept off the Java heap.
+//
+// PDFRasterizer cannot write into a ByteBuffer, so every page is first rendered into
+// an ARGB int[] scratch frame on the Java heap. There is one scratch frame per
+// DirectRasterizer; it grows to the largest frame rendered so far and is reused for
+// every page. The pixels are then written into the target buffer in the requested
+// pixel format in a single pass; for BGRA and RGBA output this is one bulk copy. The
+// ByteBuffer is only the output target. Compared to the getBitmap() -> PixelGrabber
+// -> ByteBuffer route used in PDFDrawTest Example 3 this avoids the java.awt.Image and
+// the new int[]/byte[] copies of every frame.
+//
+// A DirectRasterizer must only be used by one thread at a time.
+//---------------------------------------------------------------------------------------
+public class DirectRasterizer {
+
+    private final PDFRasterizer rast;
+    private int[] scratch = new int[0];
+
+    public DirectRasterizer(PDFRasterizer rast) {
+        this.rast = rast;
+    }
+
+    public PDFRasterizer getRasterizer() {
+        return rast;
+    }
+
+    // Renders the page into 'out', starting at the buffer's current position. Each row
+    // is width * getBytesPerPixel(pix_fmt) bytes long. The buffer position is advanced
+    // past the written pixels. 'pix_fmt' is one of PDFDraw.e_bgra, e_rgba, e_bgr, e_rgb
+    // or e_gray.
+    public void rasterize(Page page, int width, int height, Matrix2D device_mtx, int pix_fmt, ByteBuffer out) throws PDFNetException {
+        int pixels = width * height;
+        int size = pixels * getBytesPerPixel(pix_fmt);
+        if (out.remaining() < size) {
+            throw new IllegalArgumentException("Buffer too small: " + out.remaining() + " bytes left, " + size + " required");
+        }
+        if (scratch.length < pixels) {
+            scratch = new int[pixels];
+        }
+
+        rast.rasterize(page, scratch, width, height, true, device_mtx, null);
+        convert(scratch, pixels, pix_fmt, out);
+    }
+
+    // Renders the page straight into a region of a file, starting at 'position'. The
+    // mapped region is returned so that it can be forced to disk if needed.
+    public MappedByteBuffer rasterizeToFile(Page page, int width, int height, Matrix2D device_mtx, int pix_fmt,
+                                            FileChannel channel, long position) throws PDFNetException, IOException {
+        long size = (long) width * height * getBytesPerPixel(pix_fmt);
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+        rasterize(page, width, height, device_mtx, pix_fmt, region);
+        return region;
+    }
+
+    // Converts 'count' ARGB pixels into 'out' in the given pixel format. 'argb' is used
+    // as scratch space and may be modified.
+    static void convert(int[] argb, int count, int pix_fmt, ByteBuffer out) {
+        switch (pix_fmt) {
+            case PDFDraw.e_bgra:
+                // A little-endian ARGB int is laid out in memory as B, G, R, A.
+                out.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(argb, 0, count);
+                out.position(out.position() + count * 4);
+                break;
+            case PDFDraw.e_rgba:
+                for (int i = 0; i < count; ++i) {
+                    argb[i] = Integer.rotateLeft(argb[i], 8);
+                }
+                out.duplicate().order(ByteOrder.BIG_ENDIAN).asIntBuffer().put(argb, 0, count);
+                out.position(out.position() + count * 4);
+                break;
+            case PDFDraw.e_rgb:
+            case PDFDraw.e_bgr: {
+                boolean bgr = pix_fmt == PDFDraw.e_bgr;
+                int pos = out.position();
+                for (int i = 0; i < count; ++i) {
+                    int p = argb[i];
+                    byte r = (byte) (p >> 16), g = (byte) (p >> 8), b = (byte) p;
+                    out.put(pos++, bgr ? b : r);
+                    out.put(pos++, g);
+                    out.put(pos++, bgr ? r : b);
+                }
+                out.position(pos);
+                break;
+            }
+            case PDFDraw.e_gray: {
+                int pos = out.position();
+                for (int i = 0; i < count; ++i) {
+                    int p = argb[i];
+                    // ITU-R BT.601 luma, in 16.16 fixed point.
+                    int luma = (19595 * ((p >> 16) & 0xFF) + 38470 * ((p >> 8) & 0xFF) + 7471 * (p & 0xFF) + 0x8000) >> 16;
+                    out.put(pos++, (byte) luma);
+                }
+                out.position(pos);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported pixel format: " + pix_fmt);
+        }
+    }
+
+    public static int getBytesPerPixel(int pix_fmt) {
+        switch (pix_fmt) {
+            case PDFDraw.e_bgra:
+            case PDFDraw.e_rgba:
+                return 4;
+            case PDFDraw.e_rgb:
+            case PDFDraw.e_bgr:
+                return 3;
+            case PDFDraw.e_gray:
+                return 1;
+            default:
+                throw new IllegalArgumentException("Unsupported pixel format: " + pix_fmt);
+        }
+    }
+
+    // Allocates a direct buffer that is large enough for one frame.
+    public static ByteBuffer allocate(int width, int height, int pix_fmt) {
+        return ByteBuffer.allocateDirect(width * height * getBytesPerPixel(pix_fmt));
+    }
+
+    // Returns the size in pixels {width, height} of the given page box rendered at
+    // 'dpi' and rotated by 'rotate' (one of Page.e_0, e_90, e_180 or e_270).
+    public static int[] getImageSize(Page page, int box, int rotate, double dpi) throws PDFNetException {
+        double scale = dpi / 72.0; // PDF space is 72 dpi
+        int w = (int) Math.floor(scale * page.getPageWidth(box));
+        int h = (int) Math.floor(scale * page.getPageHeight(box));
+        if (rotate == Page.e_90 || rotate == Page.e_270) {
+            return new int[]{h, w};
+        }
+        return new int[]{w, h};
+    }
+
+    // Returns the matrix that maps the page from PDF space into buffer space for the
+    // given page box, rotation and resolution.
+    public static Matrix2D getDeviceMatrix(Page page, int box, int rotate, double dpi) throws PDFNetException {
+        double scale = dpi / 72.0; // PDF space is 72 dpi
+        return (new Matrix2D(scale, 0, 0, scale, 0, 0)).multiply(page.getDefaultMatrix(true, box, rotate));
+    }
+
+    // Writes the remaining bytes of 'buf' to the channel. Direct buffers are handed to
+    // the operating system without an intermediate copy on the Java heap.
+    public static void write(FileChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+}
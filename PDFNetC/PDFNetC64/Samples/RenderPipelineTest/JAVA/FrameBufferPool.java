@@ -0,0 +1,184 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+//---------------------------------------------------------------------------------------
+// FrameBufferPool keeps reusable off-heap (direct) frame buffers for repeated render
+// calls, so that a render loop that produces frames of the same size does not allocate
+// once it has warmed up.
+//
+// Requests are rounded up to a size class. Size classes are powers of two, with three
+// intermediate steps in between (e.g. 64K, 80K, 96K, 112K, 128K...), so at most 25% of
+// a buffer is wasted. Released buffers are kept per size class, up to 'max_pooled_bytes'
+// in total. Buffers released beyond that limit are left to the garbage collector.
+//
+// Typical use, together with DirectRasterizer:
+//
+//   FrameBufferPool.FrameBuffer frame = pool.lease(width * height * 4);
+//   try {
+//       direct.rasterize(page, width, height, mtx, PDFDraw.e_bgra, frame.getBuffer());
+//       ...
+//   } finally {
+//       frame.release();
+//   }
+//---------------------------------------------------------------------------------------
+public class FrameBufferPool {
+
+    private static final int MIN_CLASS_BITS = 12; // 4 KB
+    private static final long[] class_sizes = createClassSizes();
+
+    private final long max_pooled_bytes;
+    private final List<ConcurrentLinkedQueue<ByteBuffer>> free_lists;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong allocated_bytes = new AtomicLong();
+    private final AtomicLong peak_bytes = new AtomicLong();
+    private final AtomicLong pooled_bytes = new AtomicLong();
+
+    // A leased buffer. The buffer's limit is set to the requested size; its capacity
+    // may be larger. A frame buffer must be released exactly once.
+    public class FrameBuffer {
+        private final int size_class;
+        private final ByteBuffer buffer;
+        private boolean released = false;
+
+        FrameBuffer(int size_class, ByteBuffer buffer) {
+            this.size_class = size_class;
+            this.buffer = buffer;
+        }
+
+        public ByteBuffer getBuffer() {
+            if (released) {
+                throw new IllegalStateException("Frame buffer has already been released");
+            }
+            return buffer;
+        }
+
+        public void release() {
+            FrameBufferPool.this.release(this);
+        }
+    }
+
+    public FrameBufferPool(long max_pooled_bytes) {
+        this.max_pooled_bytes = max_pooled_bytes;
+        free_lists = new ArrayList<ConcurrentLinkedQueue<ByteBuffer>>(class_sizes.length);
+        for (int i = 0; i < class_sizes.length; ++i) {
+            free_lists.add(new ConcurrentLinkedQueue<ByteBuffer>());
+        }
+    }
+
+    // Leases a direct buffer with at least 'size' bytes. The returned buffer is
+    // cleared, and its limit is set to 'size'. Its contents are undefined.
+    public FrameBuffer lease(int size) {
+        int size_class = getSizeClass(size);
+        ByteBuffer buf = free_lists.get(size_class).poll();
+        if (buf != null) {
+            hits.incrementAndGet();
+            pooled_bytes.addAndGet(-buf.capacity());
+        } else {
+            misses.incrementAndGet();
+            buf = ByteBuffer.allocateDirect((int) class_sizes[size_class]);
+            long total = allocated_bytes.addAndGet(buf.capacity());
+            long peak;
+            do {
+                peak = peak_bytes.get();
+            } while (total > peak && !peak_bytes.compareAndSet(peak, total));
+        }
+
+        buf.clear();
+        buf.limit(size);
+        return new FrameBuffer(size_class, buf);
+    }
+
+    // Returns a leased buffer to the pool.
+    public void release(FrameBuffer frame) {
+        synchronized (frame) {
+            if (frame.released) {
+                throw new IllegalStateException("Frame buffer has already been released");
+            }
+            frame.released = true;
+        }
+
+        int capacity = frame.buffer.capacity();
+        if (pooled_bytes.addAndGet(capacity) <= max_pooled_bytes) {
+            free_lists.get(frame.size_class).add(frame.buffer);
+        } else {
+            // The pool is full; let the garbage collector free the native memory.
+            pooled_bytes.addAndGet(-capacity);
+            allocated_bytes.addAndGet(-capacity);
+        }
+    }
+
+    // Number of leases served from a pooled buffer.
+    public long getHits() {
+        return hits.get();
+    }
+
+    // Number of leases that required a new allocation.
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // Bytes currently allocated by the pool (leased and pooled).
+    public long getAllocatedBytes() {
+        return allocated_bytes.get();
+    }
+
+    // The highest value of getAllocatedBytes() so far.
+    public long getPeakBytes() {
+        return peak_bytes.get();
+    }
+
+    // Bytes held in the free lists, ready for reuse.
+    public long getPooledBytes() {
+        return pooled_bytes.get();
+    }
+
+    public String getStats() {
+        long total = hits.get() + misses.get();
+        return String.format("hits=%d, misses=%d (%.1f%% hit rate), allocated=%d bytes, peak=%d bytes, pooled=%d bytes",
+                hits.get(), misses.get(), total == 0 ? 0.0 : 100.0 * hits.get() / total,
+                allocated_bytes.get(), peak_bytes.get(), pooled_bytes.get());
+    }
+
+    static int getSizeClass(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Invalid buffer size: " + size);
+        }
+        int idx = Arrays.binarySearch(class_sizes, size);
+        if (idx < 0) {
+            idx = -idx - 1;
+        }
+        if (idx >= class_sizes.length) {
+            throw new IllegalArgumentException("Buffer size too large: " + size);
+        }
+        return idx;
+    }
+
+    private static long[] createClassSizes() {
+        List<Long> sizes = new ArrayList<Long>();
+        for (int bits = MIN_CLASS_BITS; bits < 31; ++bits) {
+            long base = 1L << bits;
+            for (int step = 0; step < 4; ++step) {
+                long size = base + step * (base >> 2);
+                if (size <= Integer.MAX_VALUE) {
+                    sizes.add(size);
+                }
+            }
+        }
+        long[] result = new long[sizes.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = sizes.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,172 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.pdftron.common.PDFNetException;
+import com.pdftron.pdf.*;
+import com.pdftron.sdf.Obj;
+
+//---------------------------------------------------------------------------------------
+// ParallelPageRenderer exports the pages of a PDFDoc on a fixed pool of worker threads.
+//
+// PDFDraw is not thread safe, so the renderer owns one PDFDraw per worker thread and
+// every task borrows one for the duration of a single export. Each page is rendered
+// under a document read lock (see MultiThreadedTest), which allows any number of
+// pages of the same document to be rasterized at the same time. The calling thread
+// must not hold a write lock on the document while the pages are being rendered,
+// otherwise the workers will block until the lock is released.
+//---------------------------------------------------------------------------------------
+public class ParallelPageRenderer {
+
+    // Applies the render settings (DPI, rotation, page box, smoothing...) to each
+    // PDFDraw in the pool.
+    public interface DrawSettings {
+        void apply(PDFDraw draw) throws PDFNetException;
+    }
+
+    private final ExecutorService executor;
+    private final BlockingQueue<PDFDraw> draw_pool;
+    private final List<PDFDraw> draws = new ArrayList<PDFDraw>();
+
+    private final AtomicInteger pages_rendered = new AtomicInteger();
+    private final AtomicLong render_nanos = new AtomicLong();
+    private final AtomicLong first_start = new AtomicLong();
+    private final AtomicLong last_finish = new AtomicLong();
+
+    public ParallelPageRenderer(int thread_count, DrawSettings settings) throws PDFNetException {
+        if (thread_count < 1) {
+            throw new IllegalArgumentException("thread_count must be at least 1");
+        }
+
+        draw_pool = new ArrayBlockingQueue<PDFDraw>(thread_count);
+        for (int i = 0; i < thread_count; ++i) {
+            PDFDraw draw = new PDFDraw();
+            if (settings != null) {
+                settings.apply(draw);
+            }
+            draws.add(draw);
+            draw_pool.add(draw);
+        }
+        executor = Executors.newFixedThreadPool(thread_count);
+    }
+
+    // Uses one worker thread per available processor.
+    public ParallelPageRenderer(DrawSettings settings) throws PDFNetException {
+        this(Runtime.getRuntime().availableProcessors(), settings);
+    }
+
+    // Schedules the export of a single page. The returned future yields the output
+    // path once the page has been written. 'hints' may be null.
+    public Future<String> submit(final PDFDoc doc, final int page_num, final String path,
+                                 final String format, final Obj hints) {
+        return executor.submit(new Callable<String>() {
+            public String call() throws Exception {
+                renderPage(doc, page_num, path, format, hints);
+                return path;
+            }
+        });
+    }
+
+    // Schedules the export of every page in the document. Output files are named
+    // 'path_prefix' + page number + the extension matching 'format'.
+    public List<Future<String>> exportAll(PDFDoc doc, String path_prefix, String format, Obj hints) throws PDFNetException {
+        int page_count;
+        doc.lockRead();
+        try {
+            page_count = doc.getPageCount();
+        } finally {
+            doc.unlockRead();
+        }
+
+        String ext = getExtension(format);
+        List<Future<String>> results = new ArrayList<Future<String>>(page_count);
+        for (int i = 1; i <= page_count; ++i) {
+            results.add(submit(doc, i, path_prefix + i + ext, format, hints));
+        }
+        return results;
+    }
+
+    private void renderPage(PDFDoc doc, int page_num, String path, String format, Obj hints) throws Exception {
+        PDFDraw draw = draw_pool.take();
+        long start = System.nanoTime();
+        first_start.compareAndSet(0, start);
+        try {
+            // Acquire a read lock, since we will be accessing the document. Other
+            // workers may hold read locks on the same document at the same time.
+            doc.lockRead();
+            try {
+                Page page = doc.getPage(page_num);
+                if (hints != null) {
+                    draw.export(page, path, format, hints);
+                } else {
+                    draw.export(page, path, format);
+                }
+            } finally {
+                doc.unlockRead();
+            }
+        } finally {
+            draw_pool.put(draw);
+        }
+
+        long finish = System.nanoTime();
+        render_nanos.addAndGet(finish - start);
+        pages_rendered.incrementAndGet();
+        long prev;
+        do {
+            prev = last_finish.get();
+        } while (finish > prev && !last_finish.compareAndSet(prev, finish));
+    }
+
+    public int getPagesRendered() {
+        return pages_rendered.get();
+    }
+
+    // Overall throughput, measured from the start of the first page to the end of
+    // the most recently finished page.
+    public double getPagesPerSecond() {
+        long elapsed = last_finish.get() - first_start.get();
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return pages_rendered.get() * 1e9 / elapsed;
+    }
+
+    // Average time spent rendering a single page on a worker thread.
+    public double getAveragePageMillis() {
+        int count = pages_rendered.get();
+        if (count == 0) {
+            return 0;
+        }
+        return render_nanos.get() / 1e6 / count;
+    }
+
+    // Waits for the scheduled pages to finish and releases the PDFDraw pool.
+    public void shutdown() throws PDFNetException, InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        for (PDFDraw draw : draws) {
+            draw.destroy();
+        }
+        draws.clear();
+    }
+
+    static String getExtension(String format) {
+        String f = format.toUpperCase();
+        if (f.equals("JPEG") || f.equals("JPG")) return ".jpg";
+        if (f.equals("TIFF") || f.equals("TIF")) return ".tif";
+        return "." + format.toLowerCase();
+    }
+}
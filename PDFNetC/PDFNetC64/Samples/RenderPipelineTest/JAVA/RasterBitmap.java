@@ -0,0 +1,68 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+//---------------------------------------------------------------------------------------
+// An 8 bit per component BGRA bitmap, in the same layout as the buffers returned by
+// PDFRasterizer.rasterize() when 'num_comps' is 4.
+//---------------------------------------------------------------------------------------
+public class RasterBitmap {
+    public final int width;
+    public final int height;
+    public final int stride;
+    public final byte[] data;
+
+    public RasterBitmap(int width, int height) {
+        long size = (long) width * height * 4;
+        if (width <= 0 || height <= 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid bitmap size: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.stride = width * 4;
+        this.data = new byte[(int) size];
+    }
+
+    // Copies a BGRA block (for example a rendered tile) into this bitmap at (x, y).
+    public void copyFrom(byte[] src, int src_stride, int x, int y, int w, int h) {
+        int row_bytes = w * 4;
+        for (int row = 0; row < h; ++row) {
+            System.arraycopy(src, row * src_stride, data, (y + row) * stride + x * 4, row_bytes);
+        }
+    }
+
+    // Wraps the pixel data in a BufferedImage without copying it. The image shares
+    // its storage with this bitmap.
+    public BufferedImage toBufferedImage() {
+        ComponentColorModel cm = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                true, false, Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
+        // Band offsets map the BGRA memory layout to the R, G, B, A bands.
+        PixelInterleavedSampleModel sm = new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE,
+                width, height, 4, stride, new int[]{2, 1, 0, 3});
+        WritableRaster raster = Raster.createWritableRaster(sm, new DataBufferByte(data, data.length), new Point(0, 0));
+        return new BufferedImage(cm, raster, false, null);
+    }
+
+    // Encodes the bitmap using one of the ImageIO formats (e.g. "png").
+    public void save(String path, String format) throws IOException {
+        if (!ImageIO.write(toBufferedImage(), format, new File(path))) {
+            throw new IOException("No ImageIO writer available for format: " + format);
+        }
+    }
+}
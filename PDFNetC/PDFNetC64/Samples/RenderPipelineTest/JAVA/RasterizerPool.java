@@ -0,0 +1,68 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.pdftron.common.PDFNetException;
+import com.pdftron.pdf.PDFRasterizer;
+
+//---------------------------------------------------------------------------------------
+// A fixed set of identically configured PDFRasterizer instances that can be borrowed
+// by worker threads. A PDFRasterizer must only be used by one thread at a time, so a
+// worker acquires a rasterizer, renders with it and releases it again.
+//---------------------------------------------------------------------------------------
+public class RasterizerPool {
+
+    // Applies the render settings (anti-aliasing, smoothing, overprint...) to each
+    // PDFRasterizer in the pool.
+    public interface RasterizerSettings {
+        void apply(PDFRasterizer rast) throws PDFNetException;
+    }
+
+    private final BlockingQueue<PDFRasterizer> idle;
+    private final List<PDFRasterizer> rasterizers = new ArrayList<PDFRasterizer>();
+
+    public RasterizerPool(int size, RasterizerSettings settings) throws PDFNetException {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be at least 1");
+        }
+
+        idle = new ArrayBlockingQueue<PDFRasterizer>(size);
+        for (int i = 0; i < size; ++i) {
+            PDFRasterizer rast = new PDFRasterizer();
+            if (settings != null) {
+                settings.apply(rast);
+            }
+            rasterizers.add(rast);
+            idle.add(rast);
+        }
+    }
+
+    public int size() {
+        return rasterizers.size();
+    }
+
+    // Blocks until a rasterizer becomes available.
+    public PDFRasterizer acquire() throws InterruptedException {
+        return idle.take();
+    }
+
+    public void release(PDFRasterizer rast) {
+        idle.add(rast);
+    }
+
+    // Frees the native memory of every rasterizer in the pool. The pool must not be
+    // used afterwards.
+    public void destroy() throws PDFNetException {
+        for (PDFRasterizer rast : rasterizers) {
+            rast.destroy();
+        }
+        rasterizers.clear();
+        idle.clear();
+    }
+}
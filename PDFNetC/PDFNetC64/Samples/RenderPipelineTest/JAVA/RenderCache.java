@@ -0,0 +1,440 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.pdftron.common.PDFNetException;
+import com.pdftron.filters.Filter;
+import com.pdftron.filters.FilterReader;
+import com.pdftron.pdf.*;
+import com.pdftron.sdf.DictIterator;
+import com.pdftron.sdf.Obj;
+
+//---------------------------------------------------------------------------------------
+// RenderCache sits in front of PDFDraw.export() and PDFDraw.getBitmap() and keeps the
+// rendered output of recently used pages. Entries are keyed by the document content
+// hash, the page number, a digest of the page itself (see getPageKey()), the render
+// settings (DPI or image size, rotation, page box and hint dictionary) and the output
+// format.
+//
+// There are two tiers, each bounded by size and evicted in least-recently-used order:
+//  - a memory tier holding the encoded output (or raw ARGB pixels for getBitmap()),
+//  - a disk tier holding one file per entry in 'cache_dir'. The disk tier survives
+//    restarts; its LRU order is rebuilt from the file modification times.
+//
+// Since the page digest covers the page dictionary, its content streams, resources,
+// annotations and /Rotate, a page that is modified in memory gets a new key, and its
+// old renderings are no longer returned; they are evicted like any unused entry, or
+// right away with invalidatePage(). Computing the digest reads the raw (still encoded)
+// streams of the page but does not decode them, which is much cheaper than rendering.
+// The document must not be modified by other threads during a call.
+//---------------------------------------------------------------------------------------
+public class RenderCache {
+
+    private static final String BITMAP_FORMAT = "ARGB";
+
+    private final File cache_dir;
+    private final long max_memory_bytes;
+    private final long max_disk_bytes;
+
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long memory_bytes = 0;
+    private long disk_bytes = 0;
+
+    private long memory_hits = 0, disk_hits = 0, misses = 0;
+
+    public RenderCache(File cache_dir, long max_memory_bytes, long max_disk_bytes) throws IOException {
+        if (!cache_dir.isDirectory() && !cache_dir.mkdirs()) {
+            throw new IOException("Cannot create cache directory: " + cache_dir);
+        }
+        this.cache_dir = cache_dir;
+        this.max_memory_bytes = max_memory_bytes;
+        this.max_disk_bytes = max_disk_bytes;
+        loadDiskIndex();
+    }
+
+    // Renders the page as PDFDraw.export() would, and returns the encoded image. The
+    // returned array is shared with the cache and must not be modified. 'draw' is
+    // configured with 'settings' before rendering; it must not be used by other
+    // threads at the same time.
+    public byte[] export(PDFDraw draw, RenderSettings settings, Page page, String doc_hash, String format)
+            throws PDFNetException, IOException {
+        String name = getEntryName(doc_hash, page, settings, format);
+        byte[] data = lookup(name);
+        if (data != null) {
+            return data;
+        }
+
+        File tmp = File.createTempFile("render", ".tmp", cache_dir);
+        try {
+            settings.apply(draw);
+            if (settings.getHints() != null) {
+                draw.export(page, tmp.getPath(), format, settings.getHints());
+            } else {
+                draw.export(page, tmp.getPath(), format);
+            }
+            data = Files.readAllBytes(tmp.toPath());
+        } finally {
+            tmp.delete();
+        }
+        store(name, data);
+        return data;
+    }
+
+    // Same as above, but writes the result to 'path'.
+    public void export(PDFDraw draw, RenderSettings settings, Page page, String doc_hash, String path, String format)
+            throws PDFNetException, IOException {
+        Files.write(new File(path).toPath(), export(draw, settings, page, doc_hash, format));
+    }
+
+    // Renders the page as PDFDraw.getBitmap() would. Every call returns a new image
+    // that the caller may modify. Returns null, and caches nothing, if the page has an
+    // empty size.
+    public BufferedImage getBitmap(PDFDraw draw, RenderSettings settings, Page page, String doc_hash)
+            throws PDFNetException, IOException {
+        String name = getEntryName(doc_hash, page, settings, BITMAP_FORMAT);
+        byte[] data = lookup(name);
+        if (data != null) {
+            return decodeBitmap(data);
+        }
+
+        settings.apply(draw);
+        BufferedImage image = draw.getBitmap(page);
+        if (image == null) {
+            return null;
+        }
+        store(name, encodeBitmap(image));
+        return image;
+    }
+
+    // Removes every cached rendering of the given page, in both tiers, including those
+    // of earlier versions of the page.
+    public synchronized void invalidatePage(String doc_hash, int page_num) {
+        String prefix = getPagePrefix(doc_hash, page_num);
+        for (Iterator<Map.Entry<String, byte[]>> itr = memory.entrySet().iterator(); itr.hasNext(); ) {
+            Map.Entry<String, byte[]> e = itr.next();
+            if (e.getKey().startsWith(prefix)) {
+                memory_bytes -= e.getValue().length;
+                itr.remove();
+            }
+        }
+        for (Iterator<Map.Entry<String, Long>> itr = disk.entrySet().iterator(); itr.hasNext(); ) {
+            Map.Entry<String, Long> e = itr.next();
+            if (e.getKey().startsWith(prefix)) {
+                disk_bytes -= e.getValue();
+                new File(cache_dir, e.getKey()).delete();
+                itr.remove();
+            }
+        }
+    }
+
+    public synchronized String getStats() {
+        return String.format("memory hits=%d, disk hits=%d, misses=%d, memory=%d bytes (%d entries), disk=%d bytes (%d entries)",
+                memory_hits, disk_hits, misses, memory_bytes, memory.size(), disk_bytes, disk.size());
+    }
+
+    // Returns a SHA-1 hash of the file contents, suitable as the 'doc_hash' argument.
+    public static String hashFile(String path) throws IOException {
+        MessageDigest md = createDigest();
+        InputStream in = new FileInputStream(path);
+        try {
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                md.update(buf, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return toHex(md.digest());
+    }
+
+    private synchronized byte[] lookup(String name) throws IOException {
+        byte[] data = memory.get(name);
+        if (data != null) {
+            ++memory_hits;
+            return data;
+        }
+
+        if (disk.get(name) != null) {
+            File file = new File(cache_dir, name);
+            try {
+                data = Files.readAllBytes(file.toPath());
+            } catch (IOException e) {
+                // The file was removed behind our back; treat it as a miss.
+                disk_bytes -= disk.remove(name);
+                ++misses;
+                return null;
+            }
+            file.setLastModified(System.currentTimeMillis());
+            ++disk_hits;
+            putMemory(name, data);
+            return data;
+        }
+
+        ++misses;
+        return null;
+    }
+
+    private synchronized void store(String name, byte[] data) throws IOException {
+        putMemory(name, data);
+
+        if (data.length > max_disk_bytes) {
+            return;
+        }
+        File tmp = File.createTempFile("entry", ".tmp", cache_dir);
+        Files.write(tmp.toPath(), data);
+        Files.move(tmp.toPath(), new File(cache_dir, name).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Long old = disk.put(name, (long) data.length);
+        disk_bytes += data.length - (old == null ? 0 : old);
+
+        for (Iterator<Map.Entry<String, Long>> itr = disk.entrySet().iterator(); disk_bytes > max_disk_bytes && itr.hasNext(); ) {
+            Map.Entry<String, Long> eldest = itr.next();
+            disk_bytes -= eldest.getValue();
+            new File(cache_dir, eldest.getKey()).delete();
+            itr.remove();
+        }
+    }
+
+    private void putMemory(String name, byte[] data) {
+        if (data.length > max_memory_bytes) {
+            return;
+        }
+        byte[] old = memory.put(name, data);
+        memory_bytes += data.length - (old == null ? 0 : old.length);
+
+        for (Iterator<Map.Entry<String, byte[]>> itr = memory.entrySet().iterator(); memory_bytes > max_memory_bytes && itr.hasNext(); ) {
+            memory_bytes -= itr.next().getValue().length;
+            itr.remove();
+        }
+    }
+
+    private void loadDiskIndex() {
+        File[] files = cache_dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Oldest first, so that the most recently used files end up at the tail.
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        List<File> stale = new ArrayList<File>();
+        for (File f : files) {
+            if (f.getName().endsWith(".tmp")) {
+                stale.add(f);
+            } else if (f.isFile()) {
+                disk.put(f.getName(), f.length());
+                disk_bytes += f.length();
+            }
+        }
+        for (File f : stale) {
+            f.delete();
+        }
+    }
+
+    // Entry names are '<page hash>_<content and settings hash>', so that all entries for
+    // a page share a common prefix.
+    private static String getEntryName(String doc_hash, Page page, RenderSettings settings, String format) throws PDFNetException {
+        return getPagePrefix(doc_hash, page.getIndex())
+                + hash(getPageKey(page) + ";" + settings.getKey() + ";format=" + format.toUpperCase());
+    }
+
+    // Returns a SHA-1 hash of what the page looks like: its boxes and rotation, and the
+    // page dictionary with everything it refers to (content streams, resources and
+    // annotations), including the raw stream data. Other pages and the page tree are
+    // not followed.
+    public static String getPageKey(Page page) throws PDFNetException {
+        MessageDigest md = createDigest();
+        PageHasher h = new PageHasher(md, page.getSDFObj());
+        for (double v : page.getMediaBox().get()) {
+            h.putLong(Double.doubleToLongBits(v));
+        }
+        for (double v : page.getCropBox().get()) {
+            h.putLong(Double.doubleToLongBits(v));
+        }
+        h.putInt(page.getRotation()); // /Rotate may be inherited from the page tree
+        h.putObj(page.getSDFObj());
+        h.putObj(page.getResourceDict()); // may be inherited as well
+        return toHex(md.digest());
+    }
+
+    // Feeds a canonical serialization of SDF objects to a digest: every object is
+    // written as its type followed by its value, and streams also by their raw data.
+    // Indirect objects that were seen before are replaced by the order in which they
+    // were first seen, so shared resources are hashed once and cycles terminate.
+    private static class PageHasher {
+        private final MessageDigest md;
+        private final Obj page;
+        private final Map<Long, Integer> seen = new HashMap<Long, Integer>();
+        private final byte[] buf = new byte[64 * 1024];
+
+        PageHasher(MessageDigest md, Obj page) {
+            this.md = md;
+            this.page = page;
+        }
+
+        void putInt(int v) {
+            md.update((byte) (v >> 24));
+            md.update((byte) (v >> 16));
+            md.update((byte) (v >> 8));
+            md.update((byte) v);
+        }
+
+        void putLong(long v) {
+            putInt((int) (v >> 32));
+            putInt((int) v);
+        }
+
+        void putString(String s) {
+            putInt(s.length());
+            for (int i = 0; i < s.length(); ++i) {
+                char c = s.charAt(i);
+                md.update((byte) (c >> 8));
+                md.update((byte) c);
+            }
+        }
+
+        void putObj(Obj obj) throws PDFNetException {
+            if (obj == null) {
+                md.update((byte) 'N');
+                return;
+            }
+            if (obj.isIndirect()) {
+                long id = (obj.getObjNum() << 16) | obj.getGenNum();
+                Integer first = seen.get(id);
+                if (first != null) {
+                    md.update((byte) 'R');
+                    putInt(first);
+                    return;
+                }
+                seen.put(id, seen.size());
+                if (isOtherPage(obj)) {
+                    // e.g. the destination of a link: does not change this page's look
+                    md.update((byte) 'P');
+                    return;
+                }
+            }
+
+            int type = obj.getType();
+            md.update((byte) type);
+            if (type == Obj.e_bool) {
+                md.update((byte) (obj.getBool() ? 1 : 0));
+            } else if (type == Obj.e_number) {
+                putLong(Double.doubleToLongBits(obj.getNumber()));
+            } else if (type == Obj.e_name) {
+                putString(obj.getName());
+            } else if (type == Obj.e_string) {
+                byte[] b = obj.getBuffer();
+                putInt(b.length);
+                md.update(b);
+            } else if (type == Obj.e_array) {
+                int n = (int) obj.size();
+                putInt(n);
+                for (int i = 0; i < n; ++i) {
+                    putObj(obj.getAt(i));
+                }
+            } else if (type == Obj.e_dict || type == Obj.e_stream) {
+                for (DictIterator itr = obj.getDictIterator(); itr.hasNext(); itr.next()) {
+                    String key = itr.key().getName();
+                    if (key.equals("Parent")) { // the page tree, or an annotation's parent
+                        continue;
+                    }
+                    putString(key);
+                    putObj(itr.value());
+                }
+                if (type == Obj.e_stream) {
+                    putStream(obj);
+                }
+            }
+        }
+
+        private boolean isOtherPage(Obj obj) throws PDFNetException {
+            if (!obj.isDict() || obj.getObjNum() == page.getObjNum()) {
+                return false;
+            }
+            Obj t = obj.findObj("Type");
+            return t != null && t.isName() && (t.getName().equals("Page") || t.getName().equals("Pages"));
+        }
+
+        private void putStream(Obj stream) throws PDFNetException {
+            Filter filter = stream.getRawStream(false);
+            FilterReader reader = new FilterReader(filter);
+            long n;
+            while ((n = reader.read(buf)) > 0) {
+                md.update(buf, 0, (int) n);
+            }
+            reader.destroy();
+            filter.destroy();
+        }
+    }
+
+    private static String getPagePrefix(String doc_hash, int page_num) {
+        return hash(doc_hash + "#" + page_num) + "_";
+    }
+
+    private static byte[] encodeBitmap(BufferedImage image) {
+        int w = image.getWidth(), h = image.getHeight();
+        ByteBuffer buf = ByteBuffer.allocate(8 + w * h * 4);
+        buf.putInt(w).putInt(h);
+        buf.asIntBuffer().put(image.getRGB(0, 0, w, h, null, 0, w));
+        return buf.array();
+    }
+
+    private static BufferedImage decodeBitmap(byte[] data) {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        int w = buf.getInt(), h = buf.getInt();
+        int[] argb = new int[w * h];
+        IntBuffer pixels = buf.asIntBuffer();
+        pixels.get(argb);
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, w, h, argb, 0, w);
+        return image;
+    }
+
+    private static String hash(String s) {
+        try {
+            return toHex(createDigest().digest(s.getBytes("UTF-8")));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,236 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.pdftron.common.Matrix2D;
+import com.pdftron.common.PDFNetException;
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// RenderJobScheduler runs page rendering jobs that can be cancelled, and that are
+// aborted when they miss their deadline.
+//
+// Each job is rendered by a PDFRasterizer from a RasterizerPool. When the job is
+// cancelled, or a watchdog thread notices that its deadline has passed, the job's
+// future is completed right away (with a CancellationException or TimeoutException)
+// and the cancel flag of its rasterizer is set with PDFRasterizer.setCancel().
+//
+// Jobs render into an int[] with the rasterize() overload that checks this flag, so
+// an aborted render returns early and its partial pixels are dropped. The other
+// rasterize() overloads and PDFDraw do not check the flag and always run to the end.
+// The flag is cleared before the rasterizer goes back to the pool, so the worker is
+// ready for the next job as soon as PDFNet returns from the aborted call.
+//---------------------------------------------------------------------------------------
+public class RenderJobScheduler {
+
+    // A job that has been submitted to the scheduler.
+    public class RenderJob {
+        public final int page_num;
+        public final long deadline; // in System.nanoTime() units
+        private final CompletableFuture<RasterBitmap> result = new CompletableFuture<RasterBitmap>();
+        private PDFRasterizer rast;         // while the job is running
+        private boolean cancelled = false;  // guarded by 'this'
+        private ScheduledFuture<?> watchdog;
+
+        RenderJob(int page_num, long deadline) {
+            this.page_num = page_num;
+            this.deadline = deadline;
+        }
+
+        // Completes when the page is rendered, or exceptionally with a
+        // CancellationException, TimeoutException or PDFNetException.
+        public CompletableFuture<RasterBitmap> getResult() {
+            return result;
+        }
+
+        // Cancels the job. Returns false if the job has already finished.
+        public boolean cancel() {
+            if (abort(new CancellationException("Render job for page " + page_num + " was cancelled"))) {
+                cancelled_jobs.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        private void timeout() {
+            if (abort(new TimeoutException("Render job for page " + page_num + " missed its deadline"))) {
+                timed_out_jobs.incrementAndGet();
+            }
+        }
+
+        private boolean abort(Exception reason) {
+            synchronized (this) {
+                if (cancelled || result.isDone()) {
+                    return false;
+                }
+                cancelled = true;
+                if (rast != null) {
+                    try {
+                        rast.setCancel(true);
+                    } catch (PDFNetException e) {
+                        // The job is still reported as aborted; the page just takes longer.
+                    }
+                }
+            }
+            return result.completeExceptionally(reason);
+        }
+
+        // Attaches a rasterizer to the job. Returns false if the job has been cancelled.
+        private synchronized boolean attach(PDFRasterizer rast) throws PDFNetException {
+            if (cancelled) {
+                return false;
+            }
+            rast.setCancel(false);
+            this.rast = rast;
+            return true;
+        }
+
+        private synchronized void detach() throws PDFNetException {
+            if (rast != null) {
+                rast.setCancel(false); // ready for the next job
+                rast = null;
+            }
+        }
+    }
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService watchdog;
+    private final RasterizerPool rasterizers;
+
+    private final AtomicLong completed_jobs = new AtomicLong();
+    private final AtomicLong timed_out_jobs = new AtomicLong();
+    private final AtomicLong cancelled_jobs = new AtomicLong();
+    private final AtomicLong failed_jobs = new AtomicLong();
+
+    public RenderJobScheduler(int thread_count, RasterizerPool.RasterizerSettings settings) throws PDFNetException {
+        executor = Executors.newFixedThreadPool(thread_count);
+        rasterizers = new RasterizerPool(thread_count, settings);
+        watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "render-watchdog");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    // Renders the given page at 'dpi' into a BGRA bitmap. The job is aborted if it has
+    // not finished 'timeout_ms' milliseconds after submission (0 for no deadline).
+    public RenderJob submit(final PDFDoc doc, int page_num, final double dpi, long timeout_ms) {
+        long deadline = timeout_ms > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout_ms) : Long.MAX_VALUE;
+        final RenderJob job = new RenderJob(page_num, deadline);
+        if (timeout_ms > 0) {
+            job.watchdog = watchdog.schedule(new Runnable() {
+                public void run() {
+                    job.timeout();
+                }
+            }, timeout_ms, TimeUnit.MILLISECONDS);
+        }
+        executor.execute(new Runnable() {
+            public void run() {
+                execute(doc, job, dpi);
+            }
+        });
+        return job;
+    }
+
+    public long getCompletedJobs() {
+        return completed_jobs.get();
+    }
+
+    public long getTimedOutJobs() {
+        return timed_out_jobs.get();
+    }
+
+    public long getCancelledJobs() {
+        return cancelled_jobs.get();
+    }
+
+    public long getFailedJobs() {
+        return failed_jobs.get();
+    }
+
+    public String getStats() {
+        return String.format("completed=%d, timed out=%d, cancelled=%d, failed=%d",
+                completed_jobs.get(), timed_out_jobs.get(), cancelled_jobs.get(), failed_jobs.get());
+    }
+
+    // Stops the worker threads once the submitted jobs are done, and frees the
+    // rasterizers.
+    public void shutdown() throws PDFNetException, InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        watchdog.shutdownNow();
+        rasterizers.destroy();
+    }
+
+    private void execute(PDFDoc doc, RenderJob job, double dpi) {
+        if (job.result.isDone()) {
+            return; // cancelled or timed out while waiting in the queue
+        }
+
+        PDFRasterizer rast = null;
+        try {
+            rast = rasterizers.acquire();
+            if (!job.attach(rast)) {
+                return;
+            }
+            RasterBitmap bitmap;
+            doc.lockRead();
+            try {
+                Page page = doc.getPage(job.page_num);
+                // Scale matrix from PDF space to buffer space. PDF space is 72 dpi.
+                double scale = dpi / 72.0;
+                int width = (int) Math.floor(scale * page.getPageWidth(Page.e_crop));
+                int height = (int) Math.floor(scale * page.getPageHeight(Page.e_crop));
+                Matrix2D mtx = (new Matrix2D(scale, 0, 0, scale, 0, 0)).multiply(page.getDefaultMatrix(true, Page.e_crop, 0));
+                // Only the int[] overload passes the cancel flag down to PDFNet.
+                int[] pixels = new int[width * height];
+                rast.rasterize(page, pixels, width, height, true, mtx, null);
+                if (job.result.isDone()) {
+                    return; // aborted while rendering; the pixels are incomplete
+                }
+                bitmap = new RasterBitmap(width, height);
+                DirectRasterizer.convert(pixels, pixels.length, PDFDraw.e_bgra, ByteBuffer.wrap(bitmap.data));
+            } finally {
+                doc.unlockRead();
+            }
+            if (job.result.complete(bitmap)) {
+                completed_jobs.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.cancel();
+        } catch (Exception e) {
+            // An aborted rasterizer may report an error; the job was already completed.
+            if (job.result.completeExceptionally(e)) {
+                failed_jobs.incrementAndGet();
+            }
+        } finally {
+            if (job.watchdog != null) {
+                job.watchdog.cancel(false);
+            }
+            if (rast != null) {
+                try {
+                    job.detach();
+                } catch (PDFNetException e) {
+                    // Ignore; the next job resets the rasterizer again.
+                }
+                rasterizers.release(rast);
+            }
+        }
+    }
+}
@@ -0,0 +1,351 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import com.pdftron.common.Matrix2D;
+import com.pdftron.common.PDFNetException;
+import com.pdftron.pdf.*;
+import com.pdftron.sdf.Obj;
+import com.pdftron.sdf.ObjSet;
+
+//---------------------------------------------------------------------------------------
+// The following sample illustrates how to build a multi-threaded rendering pipeline on
+// top of PDFDraw and PDFRasterizer. PDFDoc uses a recursive shared lock model, so any
+// number of threads may render pages of the same document as long as each thread holds
+// a read lock and uses its own PDFDraw/PDFRasterizer (see also MultiThreadedTest).
+//---------------------------------------------------------------------------------------
+public class RenderPipelineTest {
+    public static void main(String[] args) {
+        try {
+            // The first step in every application using PDFNet is to initialize the
+            // library and set the path to common PDF resources. The library is usually
+            // initialized only once, but calling Initialize() multiple times is also fine.
+            PDFNet.initialize();
+
+            // Relative path to the folder containing test files.
+            String input_path = "../../TestFiles/";
+            String output_path = "../../TestFiles/Output/";
+
+            ObjSet hint_set = new ObjSet();
+
+            //--------------------------------------------------------------------------------
+            // Example 1) Convert all pages in a given document to JPEG at 72 DPI, using
+            // one PDFDraw per available processor.
+            try {
+                System.out.println("Example 1:");
+                PDFDoc doc = new PDFDoc(input_path + "newsletter.pdf");
+                // Initialize the security handler, in case the PDF is encrypted.
+                doc.initSecurityHandler();
+
+                // Use optional encoder parameter to specify JPEG quality.
+                Obj encoder_param = hint_set.createDict();
+                encoder_param.putNumber("Quality", 80);
+
+                ParallelPageRenderer renderer = new ParallelPageRenderer(new ParallelPageRenderer.DrawSettings() {
+                    public void apply(PDFDraw draw) throws PDFNetException {
+                        draw.setDPI(72); // Set the output resolution is to 72 DPI.
+                    }
+                });
+
+                List<Future<String>> pages = renderer.exportAll(doc, output_path + "newsletter_parallel", "JPEG", encoder_param);
+                for (Future<String> page : pages) {
+                    System.out.println(page.get());
+                }
+                renderer.shutdown();
+
+                System.out.println(String.format("Rendered %d pages, %.2f pages/sec, %.1f ms/page",
+                        renderer.getPagesRendered(), renderer.getPagesPerSecond(), renderer.getAveragePageMillis()));
+                doc.close();
+                System.out.println("Done.");
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            //--------------------------------------------------------------------------------
+            // Example 2) Zoom into a specific region of the page and rasterize the area at
+            // 900 DPI, splitting the work into 4x4 tiles that are rendered in parallel.
+            try {
+                PDFDoc tiger_doc = new PDFDoc(input_path + "tiger.pdf");
+                tiger_doc.initSecurityHandler();
+                Page page = tiger_doc.getPage(1);
+                page.setCropBox(new Rect(216, 522, 330, 600));    // Set the page crop box.
+
+                TiledPageRenderer tiled = new TiledPageRenderer(new RasterizerPool.RasterizerSettings() {
+                    public void apply(PDFRasterizer rast) throws PDFNetException {
+                        rast.setImageSmoothing(true, true);
+                    }
+                });
+
+                long start = System.nanoTime();
+                RasterBitmap bitmap = tiled.render(tiger_doc, 1, Page.e_crop, 900, 4, 4);
+                long elapsed = System.nanoTime() - start;
+                tiled.shutdown();
+
+                bitmap.save(output_path + "tiger_zoom_900dpi_tiled.png", "png");
+                System.out.println(String.format("Example 2: tiger_zoom_900dpi_tiled.png (%dx%d, rendered in %.1f ms)",
+                        bitmap.width, bitmap.height, elapsed / 1e6));
+                tiger_doc.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            //--------------------------------------------------------------------------------
+            // Example 3) Convert the first page to raw bitmaps without going through
+            // java.awt.Image. The page is rotated 90 degrees and rendered at 100 DPI into a
+            // direct ByteBuffer that is written to disk, and then rendered as grayscale
+            // straight into a memory mapped file.
+            try {
+                PDFDoc tiger_doc = new PDFDoc(input_path + "tiger.pdf");
+                tiger_doc.initSecurityHandler();
+                Page page = tiger_doc.getPage(1);
+
+                DirectRasterizer direct = new DirectRasterizer(new PDFRasterizer());
+                int[] size = DirectRasterizer.getImageSize(page, Page.e_crop, Page.e_90, 100);
+                Matrix2D mtx = DirectRasterizer.getDeviceMatrix(page, Page.e_crop, Page.e_90, 100);
+
+                ByteBuffer frame = DirectRasterizer.allocate(size[0], size[1], PDFDraw.e_bgra);
+                direct.rasterize(page, size[0], size[1], mtx, PDFDraw.e_bgra, frame);
+                frame.flip();
+                FileChannel channel = new RandomAccessFile(output_path + "tiger_100dpi_rot90_bgra.raw", "rw").getChannel();
+                channel.truncate(0);
+                DirectRasterizer.write(channel, frame);
+                channel.close();
+                System.out.println("Example 3: tiger_100dpi_rot90_bgra.raw (" + size[0] + "x" + size[1] + ")");
+
+                channel = new RandomAccessFile(output_path + "tiger_100dpi_rot90_gray.raw", "rw").getChannel();
+                direct.rasterizeToFile(page, size[0], size[1], mtx, PDFDraw.e_gray, channel, 0).force();
+                channel.close();
+                System.out.println("Example 3: tiger_100dpi_rot90_gray.raw");
+
+                direct.getRasterizer().destroy();
+                tiger_doc.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            //--------------------------------------------------------------------------------
+            // Example 4) Render the four quadrants of every page as same-sized tiles in a
+            // loop, leasing the off-heap frame buffers from a pool. Once the pool has warmed
+            // up, every lease is served from a previously released buffer.
+            try {
+                PDFDoc doc = new PDFDoc(input_path + "newsletter.pdf");
+                doc.initSecurityHandler();
+
+                FrameBufferPool pool = new FrameBufferPool(64 * 1024 * 1024);
+                DirectRasterizer direct = new DirectRasterizer(new PDFRasterizer());
+                double dpi = 96.0;
+                double scale = dpi / 72.0; // PDF space is 72 dpi
+                int box = Page.e_crop;
+
+                for (int pass = 0; pass < 10; ++pass) {
+                    for (PageIterator itr = doc.getPageIterator(); itr.hasNext(); ) {
+                        Page pg = itr.next();
+                        // We want to render quadrants, so use half of width and height
+                        double pg_w = pg.getPageWidth(box) / 2;
+                        double pg_h = pg.getPageHeight(box) / 2;
+                        int buf_w = (int) Math.floor(scale * pg_w);
+                        int buf_h = (int) Math.floor(scale * pg_h);
+
+                        for (int quadrant = 0; quadrant < 4; ++quadrant) {
+                            Matrix2D mtx = pg.getDefaultMatrix(true, box, 0);
+                            mtx.translate(-(quadrant % 2) * pg_w, -(quadrant / 2) * pg_h);
+                            mtx = (new Matrix2D(scale, 0, 0, scale, 0, 0)).multiply(mtx);
+
+                            FrameBufferPool.FrameBuffer frame = pool.lease(buf_w * buf_h * 4);
+                            try {
+                                direct.rasterize(pg, buf_w, buf_h, mtx, PDFDraw.e_bgra, frame.getBuffer());
+                            } finally {
+                                frame.release();
+                            }
+                        }
+                    }
+                }
+
+                System.out.println("Example 4: " + pool.getStats());
+                direct.getRasterizer().destroy();
+                doc.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            //--------------------------------------------------------------------------------
+            // Example 5) Serve repeated thumbnail requests from a render cache. Only the
+            // first request for each combination of settings renders the page; changing
+            // any setting (here the hint dictionary), or the page itself, results in a
+            // different cache entry.
+            try {
+                String tiger_path = input_path + "tiger.pdf";
+                PDFDoc doc = new PDFDoc(tiger_path);
+                doc.initSecurityHandler();
+                String doc_hash = RenderCache.hashFile(tiger_path);
+                Page page = doc.getPage(1);
+
+                RenderCache cache = new RenderCache(new File(output_path + "render_cache"), 32 * 1024 * 1024, 256 * 1024 * 1024);
+                PDFDraw draw = new PDFDraw();
+
+                Obj gray_hint = hint_set.createDict();
+                gray_hint.putName("ColorSpace", "Gray");
+                RenderSettings thumb = new RenderSettings().setImageSize(200, 200, true).setRotate(Page.e_0);
+                RenderSettings gray_thumb = new RenderSettings().setImageSize(200, 200, true).setHints(gray_hint);
+
+                for (int i = 0; i < 5; ++i) {
+                    cache.export(draw, thumb, page, doc_hash, output_path + "tiger_thumb_cached.png", "PNG");
+                    cache.export(draw, gray_thumb, page, doc_hash, output_path + "tiger_thumb_gray_cached.png", "PNG");
+                    cache.getBitmap(draw, thumb, page, doc_hash);
+                }
+                System.out.println("Example 5: " + cache.getStats());
+
+                // Modify the page. Its content is part of the cache key, so the next request
+                // misses and renders the rotated page, although the document hash is the same.
+                page.setRotation(Page.e_90);
+                cache.export(draw, thumb, page, doc_hash, output_path + "tiger_thumb_rotated_cached.png", "PNG");
+                System.out.println("Example 5: " + cache.getStats());
+
+                draw.destroy();
+                doc.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            //--------------------------------------------------------------------------------
+            // Example 6) Convert a whole document into a single multi-page TIFF, and into a
+            // zip archive of PNG files. Pages are rendered in parallel but written in order,
+            // and only a small window of pages is kept in memory at any time.
+            try {
+                PDFDoc doc = new PDFDoc(input_path + "newsletter.pdf");
+                doc.initSecurityHandler();
+
+                StreamingExporter exporter = new StreamingExporter(4, 3, null);
+                exporter.export(doc, 92, output_path + "newsletter_92dpi.tif", StreamingExporter.e_tiff);
+                System.out.println("Example 6: newsletter_92dpi.tif");
+
+                exporter.setPixelFormat(PDFDraw.e_gray);
+                exporter.export(doc, 92, output_path + "newsletter_92dpi_gray.zip", StreamingExporter.e_png_zip);
+                System.out.println("Example 6: newsletter_92dpi_gray.zip");
+                System.out.println("Example 6: " + exporter.getFramePool().getStats());
+
+                exporter.shutdown();
+                doc.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            //--------------------------------------------------------------------------------
+            // Example 7) Render pages within a latency budget. The complex tiger page cannot
+            // be rendered at 900 DPI within 200 ms, so a lower resolution is returned; the
+            // text pages of the newsletter are rendered at the full 150 DPI.
+            try {
+                AdaptiveRenderer adaptive = new AdaptiveRenderer(36);
+                PDFDraw draw = new PDFDraw();
+
+                PDFDoc tiger = new PDFDoc(input_path + "tiger.pdf");
+                tiger.initSecurityHandler();
+                for (int i = 0; i < 2; ++i) {
+                    AdaptiveRenderer.Result r = adaptive.render(draw, tiger.getPage(1), "tiger", 900, 200);
+                    ImageIO.write(r.image, "png", new File(output_path + "tiger_adaptive.png"));
+                    System.out.println(String.format("Example 7: tiger.pdf at %.0f DPI (full quality: %b, %.1f ms/MP, %.0f ms)",
+                            r.dpi, r.full_quality, r.ms_per_megapixel, r.elapsed_ms));
+                }
+                tiger.close();
+
+                PDFDoc newsletter = new PDFDoc(input_path + "newsletter.pdf");
+                newsletter.initSecurityHandler();
+                for (PageIterator itr = newsletter.getPageIterator(); itr.hasNext(); ) {
+                    Page page = itr.next();
+                    AdaptiveRenderer.Result r = adaptive.render(draw, page, "newsletter", 150, 200);
+                    System.out.println(String.format("Example 7: newsletter.pdf page %d at %.0f DPI (full quality: %b, %.1f ms/MP, %.0f ms)",
+                            page.getIndex(), r.dpi, r.full_quality, r.ms_per_megapixel, r.elapsed_ms));
+                }
+                newsletter.close();
+
+                System.out.println("Example 7: " + adaptive.getStats());
+                draw.destroy();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            //--------------------------------------------------------------------------------
+            // Example 8) Render the separation plates of a page concurrently, with overprint
+            // simulation and high quality image smoothing (see PDFDrawTest Example 10).
+            // The page is rasterized in bands; then every plate is written to its own PNG
+            // file, and reported as soon as it has been written.
+            try {
+                PDFDoc doc = new PDFDoc(input_path + "op_blend_test.pdf");
+                doc.initSecurityHandler();
+
+                SeparationRenderer separations = new SeparationRenderer(4, new RasterizerPool.RasterizerSettings() {
+                    public void apply(PDFRasterizer rast) throws PDFNetException {
+                        rast.setOverprint(1);
+                        rast.setImageSmoothing(true, true);
+                    }
+                });
+                separations.render(doc, 1, 150, 8, output_path + "op_blend_test_sep", new SeparationRenderer.InkListener() {
+                    public void inkWritten(SeparationRenderer.Ink ink) {
+                        System.out.println(String.format("Example 8: %s (CMYK %d,%d,%d,%d) written in %.1f ms",
+                                new File(ink.path).getName(), ink.c, ink.m, ink.y, ink.k, ink.write_ms));
+                    }
+                });
+                StringBuilder bands = new StringBuilder();
+                for (double ms : separations.getBandMillis()) {
+                    bands.append(String.format(" %.1f", ms));
+                }
+                System.out.println("Example 8: bands rasterized in (ms):" + bands);
+
+                separations.shutdown();
+                doc.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            //--------------------------------------------------------------------------------
+            // Example 9) Render pages with a deadline. The tiger page at 1200 DPI misses its
+            // 50 ms deadline and is aborted, one job is cancelled explicitly, and the
+            // remaining jobs complete normally.
+            try {
+                PDFDoc tiger = new PDFDoc(input_path + "tiger.pdf");
+                tiger.initSecurityHandler();
+                PDFDoc newsletter = new PDFDoc(input_path + "newsletter.pdf");
+                newsletter.initSecurityHandler();
+
+                RenderJobScheduler scheduler = new RenderJobScheduler(2, null);
+                RenderJobScheduler.RenderJob slow = scheduler.submit(tiger, 1, 1200, 50);
+                RenderJobScheduler.RenderJob cancelled = scheduler.submit(tiger, 1, 600, 0);
+                RenderJobScheduler.RenderJob normal = scheduler.submit(newsletter, 1, 72, 5000);
+                cancelled.cancel();
+
+                RenderJobScheduler.RenderJob[] jobs = {slow, cancelled, normal};
+                for (RenderJobScheduler.RenderJob job : jobs) {
+                    try {
+                        RasterBitmap bitmap = job.getResult().get();
+                        System.out.println("Example 9: page " + job.page_num + " rendered (" + bitmap.width + "x" + bitmap.height + ")");
+                    } catch (Exception e) {
+                        System.out.println("Example 9: page " + job.page_num + " not rendered: " + e);
+                    }
+                }
+                scheduler.shutdown();
+                System.out.println("Example 9: " + scheduler.getStats());
+
+                tiger.close();
+                newsletter.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            // Calling Terminate when PDFNet is no longer in use is a good practice, but
+            // is not required.
+            PDFNet.terminate();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
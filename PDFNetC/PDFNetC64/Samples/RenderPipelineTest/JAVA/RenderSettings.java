@@ -0,0 +1,139 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.pdftron.common.PDFNetException;
+import com.pdftron.pdf.*;
+import com.pdftron.sdf.DictIterator;
+import com.pdftron.sdf.Obj;
+
+//---------------------------------------------------------------------------------------
+// RenderSettings records the PDFDraw settings that affect the rendered output, so that
+// they can be applied to a PDFDraw and used as part of a cache key. PDFDraw itself has
+// no getters, so code that caches rendered pages has to keep track of its settings.
+//---------------------------------------------------------------------------------------
+public class RenderSettings {
+
+    private double dpi = 92;
+    private int image_width = 0, image_height = 0;
+    private boolean preserve_aspect_ratio = true;
+    private int rotate = Page.e_0;
+    private int page_box = Page.e_crop;
+    private Obj hints = null;
+    private String hints_key = "";
+
+    // See PDFDraw.setDPI(). Replaces any image size set earlier.
+    public RenderSettings setDPI(double dpi) {
+        this.dpi = dpi;
+        this.image_width = 0;
+        this.image_height = 0;
+        return this;
+    }
+
+    // See PDFDraw.setImageSize(). Replaces any DPI set earlier.
+    public RenderSettings setImageSize(int width, int height, boolean preserve_aspect_ratio) {
+        this.image_width = width;
+        this.image_height = height;
+        this.preserve_aspect_ratio = preserve_aspect_ratio;
+        return this;
+    }
+
+    // See PDFDraw.setRotate().
+    public RenderSettings setRotate(int rotate) {
+        this.rotate = rotate;
+        return this;
+    }
+
+    // See PDFDraw.setPageBox().
+    public RenderSettings setPageBox(int page_box) {
+        this.page_box = page_box;
+        return this;
+    }
+
+    // The render/encoder hint dictionary passed to PDFDraw.export() (e.g. BPC,
+    // ColorSpace or Quality entries), or null. The dictionary must not be modified
+    // afterwards.
+    public RenderSettings setHints(Obj hints) throws PDFNetException {
+        this.hints = hints;
+        this.hints_key = hints == null ? "" : describe(hints);
+        return this;
+    }
+
+    public Obj getHints() {
+        return hints;
+    }
+
+    public void apply(PDFDraw draw) throws PDFNetException {
+        if (image_width > 0) {
+            draw.setImageSize(image_width, image_height, preserve_aspect_ratio);
+        } else {
+            draw.setDPI(dpi);
+        }
+        draw.setRotate(rotate);
+        draw.setPageBox(page_box);
+    }
+
+    // A string that uniquely identifies these settings.
+    public String getKey() {
+        StringBuilder key = new StringBuilder();
+        if (image_width > 0) {
+            key.append("size=").append(image_width).append('x').append(image_height)
+                    .append(preserve_aspect_ratio ? "" : "!");
+        } else {
+            key.append("dpi=").append(dpi);
+        }
+        key.append(";rotate=").append(rotate);
+        key.append(";box=").append(page_box);
+        key.append(";hints=").append(hints_key);
+        return key.toString();
+    }
+
+    // Writes a canonical description of an SDF object. Dictionary keys are sorted, so
+    // two hint dictionaries with the same entries produce the same string.
+    static String describe(Obj obj) throws PDFNetException {
+        StringBuilder out = new StringBuilder();
+        describe(obj, out);
+        return out.toString();
+    }
+
+    private static void describe(Obj obj, StringBuilder out) throws PDFNetException {
+        if (obj == null || obj.isNull()) {
+            out.append("null");
+        } else if (obj.isBool()) {
+            out.append(obj.getBool());
+        } else if (obj.isNumber()) {
+            out.append(obj.getNumber());
+        } else if (obj.isName()) {
+            out.append('/').append(obj.getName());
+        } else if (obj.isString()) {
+            out.append('(').append(obj.getAsPDFText()).append(')');
+        } else if (obj.isArray()) {
+            out.append('[');
+            for (int i = 0; i < obj.size(); ++i) {
+                if (i > 0) out.append(' ');
+                describe(obj.getAt(i), out);
+            }
+            out.append(']');
+        } else if (obj.isDict()) {
+            List<String> keys = new ArrayList<String>();
+            for (DictIterator itr = obj.getDictIterator(); itr.hasNext(); itr.next()) {
+                keys.add(itr.key().getName());
+            }
+            Collections.sort(keys);
+            out.append("<<");
+            for (String k : keys) {
+                out.append('/').append(k).append(' ');
+                describe(obj.findObj(k), out);
+            }
+            out.append(">>");
+        } else {
+            // Streams and indirect objects are not expected in hint dictionaries.
+            out.append("obj").append(obj.getObjNum());
+        }
+    }
+}
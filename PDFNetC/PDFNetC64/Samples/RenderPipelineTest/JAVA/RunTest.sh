@@ -0,0 +1,4 @@
+#!/bin/sh
+TEST_NAME=RenderPipelineTest
+javac -cp ../../../Lib/PDFNet.jar *.java
+java -Djava.library.path=../../../Lib -cp .:../../../Lib/PDFNet.jar $TEST_NAME
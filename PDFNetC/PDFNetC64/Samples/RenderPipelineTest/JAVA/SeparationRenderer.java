@@ -0,0 +1,232 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import com.pdftron.common.Matrix2D;
+import com.pdftron.common.PDFNetException;
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// SeparationRenderer renders the separation plates (one per process or spot ink) of a
+// page concurrently, and writes each plate to its own grayscale PNG file.
+//
+// PDFRasterizer.rasterizeSeparations() produces all inks of a region in one call, so
+// the page is split into horizontal bands that are rasterized in parallel, each by its
+// own PDFRasterizer, and the bands are assembled into one plate per ink. The plates are
+// then encoded and written concurrently, and reported to the InkListener in the order
+// in which they finish. Overprint, image smoothing and other rasterizer settings are
+// applied through RasterizerPool.RasterizerSettings.
+//
+// Since every band yields all inks at once, there is no rasterization time per ink,
+// and no plate is complete before the last band is: plates are written only after the
+// whole page has been rasterized. The times that are reported are the rasterization
+// time of each band (getBandMillis()) and the write time of each plate (Ink.write_ms).
+//---------------------------------------------------------------------------------------
+public class SeparationRenderer {
+
+    public static class Ink {
+        public final String name;
+        public final String path;
+        public final int c, m, y, k;     // the CMYK equivalent of the ink
+        public final double write_ms;    // time spent encoding and writing this plate
+
+        Ink(String name, String path, int c, int m, int y, int k, double write_ms) {
+            this.name = name;
+            this.path = path;
+            this.c = c;
+            this.m = m;
+            this.y = y;
+            this.k = k;
+            this.write_ms = write_ms;
+        }
+    }
+
+    // Called on the thread that called render(), as soon as a plate has been written,
+    // in the order in which the plates finish.
+    public interface InkListener {
+        void inkWritten(Ink ink);
+    }
+
+    private static class Plate {
+        String name;
+        int c, m, y, k;
+        byte[] data;
+    }
+
+    private final ExecutorService executor;
+    private final RasterizerPool rasterizers;
+
+    // Rasterization time of each band of the last render() call, in milliseconds.
+    private volatile double[] band_millis = new double[0];
+
+    public SeparationRenderer(int parallelism, RasterizerPool.RasterizerSettings settings) throws PDFNetException {
+        executor = Executors.newFixedThreadPool(parallelism);
+        rasterizers = new RasterizerPool(parallelism, settings);
+    }
+
+    // Renders the separations of the given page at 'dpi', split into 'bands' bands, and
+    // writes each plate to '<path_prefix>_<ink name>.png'. Returns the inks in the
+    // order in which they were written.
+    public List<Ink> render(final PDFDoc doc, final int page_num, double dpi, int bands, String path_prefix, InkListener listener)
+            throws PDFNetException, IOException, InterruptedException {
+        Matrix2D page_mtx;
+        final int width, height;
+        doc.lockRead();
+        try {
+            Page page = doc.getPage(page_num);
+            // Scale matrix from PDF space to buffer space. PDF space is 72 dpi.
+            double scale = dpi / 72.0;
+            width = (int) Math.floor(scale * page.getPageWidth(Page.e_crop));
+            height = (int) Math.floor(scale * page.getPageHeight(Page.e_crop));
+            page_mtx = (new Matrix2D(scale, 0, 0, scale, 0, 0)).multiply(page.getDefaultMatrix(true, Page.e_crop, 0));
+        } finally {
+            doc.unlockRead();
+        }
+        bands = Math.max(1, Math.min(bands, height));
+        final double[] m = {page_mtx.getA(), page_mtx.getB(), page_mtx.getC(), page_mtx.getD(), page_mtx.getH(), page_mtx.getV()};
+
+        // Rasterize the bands in parallel.
+        CompletionService<Void> band_tasks = new ExecutorCompletionService<Void>(executor);
+        final Map<String, Plate> plates = new LinkedHashMap<String, Plate>();
+        final double[] millis = new double[bands];
+        for (int i = 0; i < bands; ++i) {
+            final int band = i;
+            final int y1 = (int) ((long) height * i / bands);
+            final int y2 = (int) ((long) height * (i + 1) / bands);
+            band_tasks.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    millis[band] = renderBand(doc, page_num, m, width, height, y1, y2 - y1, plates);
+                    return null;
+                }
+            });
+        }
+        for (int i = 0; i < bands; ++i) {
+            await(band_tasks.take());
+        }
+        band_millis = millis;
+
+        // Encode and write the plates in parallel.
+        CompletionService<Ink> write_tasks = new ExecutorCompletionService<Ink>(executor);
+        for (final Plate plate : plates.values()) {
+            final String path = path_prefix + "_" + plate.name.replaceAll("[^A-Za-z0-9_-]", "_") + ".png";
+            write_tasks.submit(new Callable<Ink>() {
+                public Ink call() throws Exception {
+                    long write_start = System.nanoTime();
+                    writePlate(plate, width, height, path);
+                    return new Ink(plate.name, path, plate.c, plate.m, plate.y, plate.k,
+                            (System.nanoTime() - write_start) / 1e6);
+                }
+            });
+        }
+        List<Ink> inks = new ArrayList<Ink>(plates.size());
+        for (int i = 0; i < plates.size(); ++i) {
+            Ink ink = await(write_tasks.take());
+            inks.add(ink);
+            if (listener != null) {
+                listener.inkWritten(ink);
+            }
+        }
+        return inks;
+    }
+
+    // Returns the rasterization time of each band of the last render() call, from the
+    // top of the page, in milliseconds.
+    public double[] getBandMillis() {
+        return band_millis.clone();
+    }
+
+    // Releases the worker threads and the rasterizers.
+    public void shutdown() throws PDFNetException {
+        executor.shutdown();
+        rasterizers.destroy();
+    }
+
+    // Rasterizes a band into the plates and returns the rasterization time in
+    // milliseconds.
+    private double renderBand(PDFDoc doc, int page_num, double[] page_mtx, int width, int height, int y, int band_height,
+                              Map<String, Plate> plates) throws PDFNetException, InterruptedException {
+        Separation[] seps;
+        long start;
+        double millis;
+        PDFRasterizer rast = rasterizers.acquire();
+        try {
+            // Translate by the band origin, so that the band is rendered at (0, 0).
+            Matrix2D mtx = new Matrix2D(page_mtx[0], page_mtx[1], page_mtx[2], page_mtx[3], page_mtx[4], page_mtx[5] - y);
+            doc.lockRead();
+            try {
+                Page page = doc.getPage(page_num);
+                start = System.nanoTime();
+                seps = rast.rasterizeSeparations(page, width, band_height, mtx, null, false);
+                millis = (System.nanoTime() - start) / 1e6;
+            } finally {
+                doc.unlockRead();
+            }
+        } finally {
+            rasterizers.release(rast);
+        }
+
+        for (Separation sep : seps) {
+            String name = sep.getSeparationName();
+            Plate plate;
+            synchronized (plates) {
+                plate = plates.get(name);
+                if (plate == null) {
+                    plate = new Plate();
+                    plate.name = name;
+                    plate.c = sep.C() & 0xFF;
+                    plate.m = sep.M() & 0xFF;
+                    plate.y = sep.Y() & 0xFF;
+                    plate.k = sep.K() & 0xFF;
+                    plate.data = new byte[width * height];
+                    plates.put(name, plate);
+                }
+            }
+            // Bands never overlap, so they can be copied into place concurrently.
+            byte[] data = sep.getData();
+            int stride = data.length / band_height;
+            for (int row = 0; row < band_height; ++row) {
+                System.arraycopy(data, row * stride, plate.data, (y + row) * width, width);
+            }
+        }
+        return millis;
+    }
+
+    private static void writePlate(Plate plate, int width, int height, String path) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        System.arraycopy(plate.data, 0, pixels, 0, pixels.length);
+        plate.data = null; // no longer needed
+        ImageIO.write(image, "png", new File(path));
+    }
+
+    private static <T> T await(Future<T> future) throws PDFNetException, IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof PDFNetException) throw (PDFNetException) cause;
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+}
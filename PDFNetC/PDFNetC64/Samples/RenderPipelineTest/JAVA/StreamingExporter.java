@@ -0,0 +1,273 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.imageio.ImageIO;
+
+import com.pdftron.common.Matrix2D;
+import com.pdftron.common.PDFNetException;
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// StreamingExporter converts a whole document into a single multi-page TIFF file, or a
+// zip archive with one PNG per page, without holding the document's pages in memory.
+//
+// Pages are rendered on worker threads, but written strictly in page order. At most
+// 'look_ahead' pages are rendered ahead of the page that is being written, so at most
+// look_ahead + 1 frame buffers are leased at a time, regardless of the page count.
+// Frames are leased from a FrameBufferPool and written through a FileChannel.
+//
+// Memory use does not grow with the page count, but it is more than look_ahead + 1
+// frames:
+//  - each leased frame buffer (off heap) is rounded up to its pool size class,
+//  - released buffers stay in the pool, which has no byte limit; a document with
+//    pages of many sizes keeps up to look_ahead + 1 buffers for every size class it
+//    used, until the exporter is discarded,
+//  - every worker's DirectRasterizer keeps an ARGB int[] scratch frame on the Java
+//    heap, as large as the largest page it has rendered,
+//  - e_png_zip output also keeps a byte[] copy of the largest page written so far.
+//---------------------------------------------------------------------------------------
+public class StreamingExporter {
+
+    public static final int e_tiff = 0;      // a single multi-page TIFF file
+    public static final int e_png_zip = 1;   // a zip archive of PNG files, one per page
+
+    private final int look_ahead;
+    private final ExecutorService executor;
+    private final BlockingQueue<DirectRasterizer> rasterizers;
+    private final FrameBufferPool frames = new FrameBufferPool(Long.MAX_VALUE); // see the class comment
+    private int pix_fmt = PDFDraw.e_rgb;
+    private int page_box = Page.e_crop;
+
+    private static class Frame {
+        int page_num, width, height;
+        FrameBufferPool.FrameBuffer buffer;
+    }
+
+    public StreamingExporter(int thread_count, int look_ahead, RasterizerPool.RasterizerSettings settings) throws PDFNetException {
+        if (look_ahead < 1) {
+            throw new IllegalArgumentException("look_ahead must be at least 1");
+        }
+        this.look_ahead = look_ahead;
+        executor = Executors.newFixedThreadPool(thread_count);
+        rasterizers = new ArrayBlockingQueue<DirectRasterizer>(thread_count);
+        for (int i = 0; i < thread_count; ++i) {
+            PDFRasterizer rast = new PDFRasterizer();
+            if (settings != null) {
+                settings.apply(rast);
+            }
+            rasterizers.add(new DirectRasterizer(rast));
+        }
+    }
+
+    // Selects the output pixel format: PDFDraw.e_rgb (default) or PDFDraw.e_gray.
+    public void setPixelFormat(int pix_fmt) {
+        if (pix_fmt != PDFDraw.e_rgb && pix_fmt != PDFDraw.e_gray) {
+            throw new IllegalArgumentException("Only e_rgb and e_gray are supported");
+        }
+        this.pix_fmt = pix_fmt;
+    }
+
+    // See PDFDraw.setPageBox().
+    public void setPageBox(int page_box) {
+        this.page_box = page_box;
+    }
+
+    public FrameBufferPool getFramePool() {
+        return frames;
+    }
+
+    // Renders every page of the document at 'dpi' and writes them to 'path' in the
+    // given format (e_tiff or e_png_zip).
+    public void export(PDFDoc doc, double dpi, String path, int format)
+            throws PDFNetException, IOException, InterruptedException {
+        int page_count;
+        doc.lockRead();
+        try {
+            page_count = doc.getPageCount();
+        } finally {
+            doc.unlockRead();
+        }
+
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        FileChannel channel = file.getChannel();
+        ArrayDeque<Future<Frame>> pending = new ArrayDeque<Future<Frame>>();
+        try {
+            channel.truncate(0);
+            TiffSequenceWriter tiff = null;
+            ZipOutputStream zip = null;
+            if (format == e_tiff) {
+                tiff = new TiffSequenceWriter(channel);
+            } else if (format == e_png_zip) {
+                OutputStream out = Channels.newOutputStream(channel);
+                zip = new ZipOutputStream(out);
+                zip.setLevel(0); // PNG data is already compressed
+            } else {
+                throw new IllegalArgumentException("Unknown format: " + format);
+            }
+
+            byte[] png_pixels = null;
+            int next_page = 1;
+            for (int i = 1; i <= page_count; ++i) {
+                // Keep up to 'look_ahead' pages in flight.
+                while (next_page <= page_count && pending.size() < look_ahead) {
+                    pending.add(submit(doc, next_page++, dpi));
+                }
+
+                Frame frame = getFrame(pending.removeFirst());
+                try {
+                    if (tiff != null) {
+                        tiff.writePage(frame.buffer.getBuffer(), frame.width, frame.height,
+                                DirectRasterizer.getBytesPerPixel(pix_fmt), dpi);
+                    } else {
+                        int size = frame.buffer.getBuffer().remaining();
+                        if (png_pixels == null || png_pixels.length < size) {
+                            png_pixels = new byte[size];
+                        }
+                        frame.buffer.getBuffer().get(png_pixels, 0, size);
+                        zip.putNextEntry(new ZipEntry(String.format("page_%04d.png", frame.page_num)));
+                        ImageIO.write(createImage(png_pixels, frame.width, frame.height), "png", zip);
+                        zip.closeEntry();
+                    }
+                } finally {
+                    frame.buffer.release();
+                }
+            }
+
+            if (zip != null) {
+                zip.finish();
+                zip.flush();
+            }
+        } finally {
+            discard(pending);
+            channel.close();
+            file.close();
+        }
+    }
+
+    // Frees the worker threads and the rasterizers.
+    public void shutdown() throws PDFNetException, InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        for (DirectRasterizer direct : rasterizers) {
+            direct.getRasterizer().destroy();
+        }
+        rasterizers.clear();
+    }
+
+    private Future<Frame> submit(final PDFDoc doc, final int page_num, final double dpi) {
+        return executor.submit(new Callable<Frame>() {
+            public Frame call() throws Exception {
+                return render(doc, page_num, dpi);
+            }
+        });
+    }
+
+    private Frame render(PDFDoc doc, int page_num, double dpi) throws PDFNetException, InterruptedException {
+        DirectRasterizer direct = rasterizers.take();
+        try {
+            doc.lockRead();
+            try {
+                Page page = doc.getPage(page_num);
+                int[] size = DirectRasterizer.getImageSize(page, page_box, Page.e_0, dpi);
+                Matrix2D mtx = DirectRasterizer.getDeviceMatrix(page, page_box, Page.e_0, dpi);
+
+                Frame frame = new Frame();
+                frame.page_num = page_num;
+                frame.width = size[0];
+                frame.height = size[1];
+                frame.buffer = frames.lease(size[0] * size[1] * DirectRasterizer.getBytesPerPixel(pix_fmt));
+                boolean rendered = false;
+                try {
+                    direct.rasterize(page, frame.width, frame.height, mtx, pix_fmt, frame.buffer.getBuffer());
+                    frame.buffer.getBuffer().flip();
+                    rendered = true;
+                } finally {
+                    if (!rendered) {
+                        frame.buffer.release();
+                    }
+                }
+                return frame;
+            } finally {
+                doc.unlockRead();
+            }
+        } finally {
+            rasterizers.put(direct);
+        }
+    }
+
+    // Cancels the renders that have not started yet, and waits for the others so that
+    // their frames go back to the pool.
+    private static void discard(ArrayDeque<Future<Frame>> pending) {
+        boolean interrupted = false;
+        for (Future<Frame> f : pending) {
+            if (f.cancel(false)) {
+                continue;
+            }
+            while (true) {
+                try {
+                    f.get().buffer.release();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break; // render() has released the frame
+                }
+            }
+        }
+        pending.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Frame getFrame(Future<Frame> future) throws PDFNetException, IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof PDFNetException) throw (PDFNetException) cause;
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    // Wraps RGB or grayscale pixels in a BufferedImage without copying them.
+    private BufferedImage createImage(byte[] pixels, int width, int height) {
+        int comps = DirectRasterizer.getBytesPerPixel(pix_fmt);
+        ColorSpace cs = ColorSpace.getInstance(comps == 3 ? ColorSpace.CS_sRGB : ColorSpace.CS_GRAY);
+        ComponentColorModel cm = new ComponentColorModel(cs, false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        int[] bands = comps == 3 ? new int[]{0, 1, 2} : new int[]{0};
+        PixelInterleavedSampleModel sm = new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE,
+                width, height, comps, width * comps, bands);
+        return new BufferedImage(cm, Raster.createWritableRaster(sm, new DataBufferByte(pixels, pixels.length), new Point(0, 0)), false, null);
+    }
+}
@@ -0,0 +1,121 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+//---------------------------------------------------------------------------------------
+// TiffSequenceWriter appends pages to a multi-page TIFF file as they become available.
+// Each page is written as one uncompressed strip (8 bit RGB or grayscale), followed by
+// its image file directory (IFD). The link from the previous IFD is patched in place, so
+// only the current page has to be kept in memory, no matter how many pages the file
+// will contain.
+//---------------------------------------------------------------------------------------
+public class TiffSequenceWriter {
+
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+    private static final int TYPE_RATIONAL = 5;
+    private static final long MAX_FILE_SIZE = 0xFFFFFFFFL; // classic TIFF uses 32 bit offsets
+
+    private final FileChannel channel;
+    private final ByteBuffer ifd = ByteBuffer.allocate(512).order(ByteOrder.LITTLE_ENDIAN);
+    private long position;
+    private long next_ifd_link; // where the offset of the next IFD has to be written
+    private int page_count = 0;
+
+    // Writes the TIFF header to the (empty) channel.
+    public TiffSequenceWriter(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        header.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(0);
+        header.flip();
+        channel.truncate(0);
+        write(header, 0);
+        position = 8;
+        next_ifd_link = 4;
+    }
+
+    public int getPageCount() {
+        return page_count;
+    }
+
+    // Appends one page. 'pixels' holds width * height * components bytes (components
+    // is 3 for RGB or 1 for grayscale), from its position to its limit.
+    public void writePage(ByteBuffer pixels, int width, int height, int components, double dpi) throws IOException {
+        if (components != 1 && components != 3) {
+            throw new IllegalArgumentException("Only RGB and grayscale pages are supported");
+        }
+        long strip_size = (long) width * height * components;
+        if (pixels.remaining() != strip_size) {
+            throw new IllegalArgumentException("Expected " + strip_size + " bytes, got " + pixels.remaining());
+        }
+        if (position + strip_size + ifd.capacity() > MAX_FILE_SIZE) {
+            throw new IOException("TIFF file would exceed 4 GB");
+        }
+
+        // Image data.
+        long strip_offset = position;
+        write(pixels, position);
+        position += strip_size;
+        if ((position & 1) != 0) {
+            write(ByteBuffer.allocate(1), position); // IFDs must start on a word boundary
+            ++position;
+        }
+
+        // IFD, followed by the values that do not fit into an IFD entry.
+        final int entry_count = 12;
+        long ifd_offset = position;
+        long values_offset = ifd_offset + 2 + entry_count * 12 + 4;
+        long bps_offset = values_offset;
+        long res_offset = values_offset + 8;
+        int dpi_value = (int) Math.round(dpi);
+
+        ifd.clear();
+        ifd.putShort((short) entry_count);
+        putEntry(256, TYPE_LONG, 1, width);                               // ImageWidth
+        putEntry(257, TYPE_LONG, 1, height);                              // ImageLength
+        putEntry(258, TYPE_SHORT, components, components == 3 ? bps_offset : 8); // BitsPerSample
+        putEntry(259, TYPE_SHORT, 1, 1);                                  // Compression: none
+        putEntry(262, TYPE_SHORT, 1, components == 3 ? 2 : 1);            // Photometric: RGB or BlackIsZero
+        putEntry(273, TYPE_LONG, 1, strip_offset);                        // StripOffsets
+        putEntry(277, TYPE_SHORT, 1, components);                         // SamplesPerPixel
+        putEntry(278, TYPE_LONG, 1, height);                              // RowsPerStrip
+        putEntry(279, TYPE_LONG, 1, strip_size);                          // StripByteCounts
+        putEntry(282, TYPE_RATIONAL, 1, res_offset);                      // XResolution
+        putEntry(283, TYPE_RATIONAL, 1, res_offset + 8);                  // YResolution
+        putEntry(296, TYPE_SHORT, 1, 2);                                  // ResolutionUnit: inch
+        ifd.putInt(0);                                                    // no next IFD (yet)
+        ifd.putShort((short) 8).putShort((short) 8).putShort((short) 8).putShort((short) 0);
+        ifd.putInt(dpi_value).putInt(1).putInt(dpi_value).putInt(1);
+        ifd.flip();
+        write(ifd, ifd_offset);
+        position = ifd_offset + ifd.limit();
+
+        // Link the previous IFD (or the header) to this one.
+        ByteBuffer link = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        link.putInt((int) ifd_offset).flip();
+        write(link, next_ifd_link);
+        next_ifd_link = values_offset - 4;
+        ++page_count;
+    }
+
+    private void putEntry(int tag, int type, int count, long value) {
+        ifd.putShort((short) tag).putShort((short) type).putInt(count);
+        if (type == TYPE_SHORT && count == 1) {
+            ifd.putShort((short) value).putShort((short) 0);
+        } else {
+            ifd.putInt((int) value);
+        }
+    }
+
+    private void write(ByteBuffer buf, long offset) throws IOException {
+        while (buf.hasRemaining()) {
+            offset += channel.write(buf, offset);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.pdftron.common.Matrix2D;
+import com.pdftron.common.PDFNetException;
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// TiledPageRenderer rasterizes a single (large) page by splitting it into a grid of
+// tiles that are rendered concurrently on a fork-join pool and stitched into one BGRA
+// bitmap. This is the tiled rendering approach outlined in PDFDrawTest Example 8: each
+// tile is rendered by PDFRasterizer with a device matrix that is translated so that
+// the tile's top-left corner maps to the origin of the tile buffer.
+//---------------------------------------------------------------------------------------
+public class TiledPageRenderer {
+
+    private final ForkJoinPool pool;
+    private final RasterizerPool rasterizers;
+
+    public TiledPageRenderer(int parallelism, RasterizerPool.RasterizerSettings settings) throws PDFNetException {
+        pool = new ForkJoinPool(parallelism);
+        rasterizers = new RasterizerPool(parallelism, settings);
+    }
+
+    // Uses one worker thread per available processor.
+    public TiledPageRenderer(RasterizerPool.RasterizerSettings settings) throws PDFNetException {
+        this(Runtime.getRuntime().availableProcessors(), settings);
+    }
+
+    // Renders the given page at 'dpi' using 'cols' x 'rows' tiles. 'box' selects the
+    // page box that is rendered (e.g. Page.e_crop).
+    public RasterBitmap render(PDFDoc doc, int page_num, int box, double dpi, int cols, int rows) throws PDFNetException {
+        if (cols < 1 || rows < 1) {
+            throw new IllegalArgumentException("cols and rows must be at least 1");
+        }
+
+        Matrix2D page_mtx;
+        int width, height;
+        doc.lockRead();
+        try {
+            Page page = doc.getPage(page_num);
+            // Scale matrix from PDF space to buffer space. PDF space is 72 dpi.
+            double scale = dpi / 72.0;
+            width = (int) Math.floor(scale * page.getPageWidth(box));
+            height = (int) Math.floor(scale * page.getPageHeight(box));
+            page_mtx = (new Matrix2D(scale, 0, 0, scale, 0, 0)).multiply(page.getDefaultMatrix(true, box, 0));
+        } finally {
+            doc.unlockRead();
+        }
+
+        RasterBitmap bitmap = new RasterBitmap(width, height);
+        double[] m = {page_mtx.getA(), page_mtx.getB(), page_mtx.getC(), page_mtx.getD(), page_mtx.getH(), page_mtx.getV()};
+        TileTask task = new TileTask(doc, page_num, m, bitmap, cols, rows, 0, cols * rows);
+        try {
+            pool.invoke(task);
+        } catch (RuntimeException e) {
+            // The fork-join pool may wrap the exception thrown by the tile task again,
+            // so look for the original PDFNetException along the cause chain.
+            for (Throwable t = e.getCause(); t != null; t = t.getCause()) {
+                if (t instanceof PDFNetException) {
+                    throw (PDFNetException) t;
+                }
+            }
+            throw e;
+        }
+        return bitmap;
+    }
+
+    // Releases the worker threads and the rasterizers.
+    public void shutdown() throws PDFNetException {
+        pool.shutdown();
+        rasterizers.destroy();
+    }
+
+    // Splits the range of tile indices [lo, hi) in half until a single tile is left.
+    private class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final PDFDoc doc;
+        final int page_num;
+        final double[] page_mtx;
+        final RasterBitmap bitmap;
+        final int cols, rows, lo, hi;
+
+        TileTask(PDFDoc doc, int page_num, double[] page_mtx, RasterBitmap bitmap, int cols, int rows, int lo, int hi) {
+            this.doc = doc;
+            this.page_num = page_num;
+            this.page_mtx = page_mtx;
+            this.bitmap = bitmap;
+            this.cols = cols;
+            this.rows = rows;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new TileTask(doc, page_num, page_mtx, bitmap, cols, rows, lo, mid),
+                        new TileTask(doc, page_num, page_mtx, bitmap, cols, rows, mid, hi));
+                return;
+            }
+
+            int col = lo % cols, row = lo / cols;
+            int x1 = (int) ((long) bitmap.width * col / cols);
+            int x2 = (int) ((long) bitmap.width * (col + 1) / cols);
+            int y1 = (int) ((long) bitmap.height * row / rows);
+            int y2 = (int) ((long) bitmap.height * (row + 1) / rows);
+            if (x2 <= x1 || y2 <= y1) {
+                return;
+            }
+
+            try {
+                renderTile(x1, y1, x2 - x1, y2 - y1);
+            } catch (PDFNetException e) {
+                throw new RuntimeException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void renderTile(int x, int y, int w, int h) throws PDFNetException, InterruptedException {
+            int bytes_per_pixel = 4; // BGRA buffer
+            PDFRasterizer rast = rasterizers.acquire();
+            try {
+                // Translate by the tile origin, so that the tile is rendered at (0, 0).
+                Matrix2D mtx = new Matrix2D(page_mtx[0], page_mtx[1], page_mtx[2], page_mtx[3],
+                        page_mtx[4] - x, page_mtx[5] - y);
+                byte[] buf;
+                doc.lockRead();
+                try {
+                    Page page = doc.getPage(page_num);
+                    buf = rast.rasterize(page, w, h, w * bytes_per_pixel, bytes_per_pixel, true, mtx, null);
+                } finally {
+                    doc.unlockRead();
+                }
+                // Tiles never overlap, so they can be copied into place concurrently.
+                bitmap.copyFrom(buf, w * bytes_per_pixel, x, y, w, h);
+            } finally {
+                rasterizers.release(rast);
+            }
+        }
+    }
+}
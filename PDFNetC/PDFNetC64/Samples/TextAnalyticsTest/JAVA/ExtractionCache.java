@@ -0,0 +1,378 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.pdftron.common.PDFNetException;
+import com.pdftron.filters.Filter;
+import com.pdftron.filters.FilterReader;
+import com.pdftron.pdf.*;
+import com.pdftron.sdf.DictIterator;
+import com.pdftron.sdf.Obj;
+
+//---------------------------------------------------------------------------------------
+// ExtractionCache keeps the word tables (see WordTable) of extracted pages in a
+// directory, so that a page that was extracted before, in this or any other document,
+// is not extracted again.
+//
+// Pages are keyed by a SHA-1 hash of what TextExtractor reads: the raw (still encoded)
+// bytes of the page's content streams, its resource dictionary including fonts and
+// form XObjects, the crop box and rotation, and the extraction flags. Image data is
+// left out, since it does not change the text. Computing the key reads the content
+// streams but does not decode or parse them, which is much cheaper than extraction.
+//
+// The cache is bounded by the total size of its files; the least recently used
+// entries are removed first. Hit, miss and byte counts are kept to help size it.
+//---------------------------------------------------------------------------------------
+public class ExtractionCache {
+
+    private static final String SUFFIX = ".words";
+
+    private final File dir;
+    private final long max_bytes;
+
+    // Key -> file size, in least recently used order.
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long total_bytes = 0;
+
+    private long hits = 0, misses = 0, puts = 0, evictions = 0;
+    private long bytes_read = 0, bytes_written = 0;
+    private double put_millis = 0; // extraction time of the pages that were added
+
+    // Opens or creates the cache in 'dir', holding up to 'max_bytes' of word tables.
+    public ExtractionCache(File dir, long max_bytes) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create cache directory: " + dir);
+        }
+        this.dir = dir;
+        this.max_bytes = max_bytes;
+
+        // The modification time of a file is its last use (see get()).
+        File[] files = dir.listFiles();
+        if (files != null) {
+            final Map<File, Long> modified = new HashMap<File, Long>();
+            for (File f : files) {
+                modified.put(f, f.lastModified());
+            }
+            Arrays.sort(files, new Comparator<File>() {
+                public int compare(File a, File b) {
+                    return Long.compare(modified.get(a), modified.get(b));
+                }
+            });
+            for (File f : files) {
+                String name = f.getName();
+                if (name.endsWith(SUFFIX)) {
+                    entries.put(name.substring(0, name.length() - SUFFIX.length()), f.length());
+                    total_bytes += f.length();
+                } else if (name.endsWith(".tmp")) { // left behind by a crash in put()
+                    f.delete();
+                }
+            }
+        }
+        synchronized (this) {
+            evict();
+        }
+    }
+
+    // Returns the words of the page, from the cache if possible. On a miss the page is
+    // extracted with 'txt' and 'flags' (see TextExtractor.begin()) and added to the
+    // cache. The document is read-locked while the page is hashed and extracted.
+    public WordTable getWordTable(PDFDoc doc, int page_num, TextExtractor txt, int flags) throws Exception {
+        String key;
+        doc.lockRead();
+        try {
+            key = getKey(doc.getPage(page_num), flags);
+        } finally {
+            doc.unlockRead();
+        }
+        WordTable table = get(key, page_num);
+        if (table != null) {
+            return table;
+        }
+
+        long start = System.nanoTime();
+        doc.lockRead();
+        try {
+            txt.begin(doc.getPage(page_num), null, flags);
+            table = WordTable.build(page_num, txt);
+        } finally {
+            doc.unlockRead();
+        }
+        put(key, table, (System.nanoTime() - start) / 1e6);
+        return table;
+    }
+
+    // Returns the cached words for 'key' with the page number 'page_num', or null.
+    public WordTable get(String key, int page_num) {
+        File file;
+        synchronized (this) {
+            if (entries.get(key) == null) { // also marks the entry as recently used
+                ++misses;
+                return null;
+            }
+            file = getFile(key);
+        }
+        try {
+            byte[] data = readFile(file);
+            WordTable table = WordTable.read(ByteBuffer.wrap(data), page_num);
+            file.setLastModified(System.currentTimeMillis());
+            synchronized (this) {
+                ++hits;
+                bytes_read += data.length;
+            }
+            return table;
+        } catch (IOException e) {
+            // Evicted by another thread in the meantime, or damaged: treat as a miss.
+            synchronized (this) {
+                remove(key);
+                ++misses;
+            }
+            return null;
+        }
+    }
+
+    // Adds the words of a page that was extracted in 'millis' milliseconds.
+    public void put(String key, WordTable table, double millis) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(table.getSerializedSize());
+        table.write(buf);
+        File file = getFile(key);
+        File tmp = new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(buf.array(), 0, buf.position());
+        } finally {
+            out.close();
+        }
+        synchronized (this) {
+            ++puts;
+            put_millis += millis;
+            Long old = entries.remove(key);
+            if (old != null) {
+                total_bytes -= old;
+            }
+            try {
+                // A concurrent get() sees either the old or the new file.
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                tmp.delete();
+                throw e;
+            }
+            entries.put(key, (long) buf.position());
+            total_bytes += buf.position();
+            bytes_written += buf.position();
+            evict();
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    // The size of the word tables that were read from the cache instead of being
+    // extracted.
+    public synchronized long getBytesSaved() {
+        return bytes_read;
+    }
+
+    public synchronized long getSize() {
+        return total_bytes;
+    }
+
+    public synchronized String getStats() {
+        long lookups = hits + misses;
+        return String.format("%d lookups, %d hits (%.1f%%), %d misses, %d bytes saved, %d bytes written, " +
+                        "~%.0f ms of extraction saved, %d entries (%d bytes), %d evicted",
+                lookups, hits, lookups == 0 ? 0.0 : 100.0 * hits / lookups, misses, bytes_read, bytes_written,
+                puts == 0 ? 0.0 : hits * put_millis / puts, entries.size(), total_bytes, evictions);
+    }
+
+    //------------------------------------------------------------------------------------
+    // Page keys
+
+    // Returns the cache key of the page for the given extraction flags. The document
+    // must be locked.
+    public static String getKey(Page page, int flags) throws PDFNetException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        Hasher h = new Hasher(md);
+        h.putInt(flags);
+        for (double v : page.getCropBox().get()) {
+            h.putLong(Double.doubleToLongBits(v));
+        }
+        h.putInt(page.getRotation());
+        h.putObj(page.getContents(), false);
+        h.putObj(page.getResourceDict(), false);
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    // Feeds a canonical serialization of SDF objects to a digest. Indirect objects that
+    // were seen before (shared resources, or cycles) are replaced by the order in which
+    // they were first seen, so the key does not depend on object numbers.
+    private static class Hasher {
+        private final MessageDigest md;
+        private final Map<Long, Integer> seen = new HashMap<Long, Integer>();
+        private final byte[] buf = new byte[64 * 1024];
+
+        Hasher(MessageDigest md) {
+            this.md = md;
+        }
+
+        void putInt(int v) {
+            md.update((byte) (v >> 24));
+            md.update((byte) (v >> 16));
+            md.update((byte) (v >> 8));
+            md.update((byte) v);
+        }
+
+        void putLong(long v) {
+            putInt((int) (v >> 32));
+            putInt((int) v);
+        }
+
+        void putString(String s) {
+            putInt(s.length());
+            for (int i = 0; i < s.length(); ++i) {
+                char c = s.charAt(i);
+                md.update((byte) (c >> 8));
+                md.update((byte) c);
+            }
+        }
+
+        void putObj(Obj obj, boolean skip_data) throws PDFNetException {
+            if (obj == null) {
+                md.update((byte) 'N');
+                return;
+            }
+            if (obj.isIndirect()) {
+                long id = (obj.getObjNum() << 16) | obj.getGenNum();
+                Integer first = seen.get(id);
+                if (first != null) {
+                    md.update((byte) 'R');
+                    putInt(first);
+                    return;
+                }
+                seen.put(id, seen.size());
+            }
+
+            int type = obj.getType();
+            md.update((byte) type);
+            if (type == Obj.e_bool) {
+                md.update((byte) (obj.getBool() ? 1 : 0));
+            } else if (type == Obj.e_number) {
+                putLong(Double.doubleToLongBits(obj.getNumber()));
+            } else if (type == Obj.e_name) {
+                putString(obj.getName());
+            } else if (type == Obj.e_string) {
+                byte[] b = obj.getBuffer();
+                putInt(b.length);
+                md.update(b);
+            } else if (type == Obj.e_array) {
+                int n = (int) obj.size();
+                putInt(n);
+                for (int i = 0; i < n; ++i) {
+                    putObj(obj.getAt(i), skip_data);
+                }
+            } else if (type == Obj.e_dict || type == Obj.e_stream) {
+                // Image data does not change the text of the page.
+                Obj subtype = obj.findObj("Subtype");
+                boolean image = type == Obj.e_stream && subtype != null && subtype.isName() && subtype.getName().equals("Image");
+                for (DictIterator itr = obj.getDictIterator(); itr.hasNext(); itr.next()) {
+                    putString(itr.key().getName());
+                    putObj(itr.value(), skip_data || image);
+                }
+                if (type == Obj.e_stream && !skip_data && !image) {
+                    putStream(obj);
+                }
+            }
+        }
+
+        private void putStream(Obj stream) throws PDFNetException {
+            Filter filter = stream.getRawStream(false);
+            FilterReader reader = new FilterReader(filter);
+            long n;
+            while ((n = reader.read(buf)) > 0) {
+                md.update(buf, 0, (int) n);
+            }
+            reader.destroy();
+            filter.destroy();
+        }
+    }
+
+    //------------------------------------------------------------------------------------
+
+    private File getFile(String key) {
+        return new File(dir, key + SUFFIX);
+    }
+
+    // Removes the least recently used entries until the cache fits.
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> itr = entries.entrySet().iterator();
+        while (total_bytes > max_bytes && itr.hasNext()) {
+            Map.Entry<String, Long> e = itr.next();
+            getFile(e.getKey()).delete();
+            total_bytes -= e.getValue();
+            itr.remove();
+            ++evictions;
+        }
+    }
+
+    private void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            total_bytes -= size;
+            getFile(key).delete();
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            long length = file.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + file);
+            }
+            byte[] data = new byte[(int) length];
+            int pos = 0, n;
+            while (pos < data.length && (n = in.read(data, pos, data.length - pos)) > 0) {
+                pos += n;
+            }
+            if (pos < data.length) {
+                throw new IOException("Truncated file: " + file);
+            }
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//---------------------------------------------------------------------------------------
+// An IndexSegment is the part of a TextIndex that belongs to one document. It is an
+// immutable file with the word table of every page (see WordTable), followed by a
+// sorted term dictionary and the postings of each term, i.e. the (page, word ordinal)
+// pairs at which the term occurs.
+//
+// Segments are read through a memory mapping. Terms are looked up by binary search
+// directly on the mapped dictionary, and word tables are only decoded for pages that
+// contain a hit.
+//
+// Layout (little-endian):
+//   int magic, version, page_count, term_count
+//   int page_offset[page_count]                 (offsets of the word tables)
+//   int dictionary_offset                       (offset of term_start)
+//   word tables
+//   int term_start[term_count + 1]              (offsets into the term chars)
+//   int posting_start[term_count + 1]           (offsets into the postings, in pairs)
+//   char term_chars[]
+//   int postings[]                              (page, word) pairs
+//---------------------------------------------------------------------------------------
+class IndexSegment {
+
+    private static final int MAGIC = 0x47455354; // "TSEG"
+    private static final int VERSION = 1;
+
+    final int page_count;
+    final int term_count;
+    private final ByteBuffer map;
+    private final IntBuffer page_offsets;
+    private final IntBuffer term_starts;
+    private final IntBuffer posting_starts;
+    private final CharBuffer term_chars;
+    private final IntBuffer postings;
+    private final WordTable[] tables;
+
+    private IndexSegment(ByteBuffer map) throws IOException {
+        this.map = map.order(ByteOrder.LITTLE_ENDIAN);
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            throw new IOException("Not an index segment");
+        }
+        page_count = map.getInt(8);
+        term_count = map.getInt(12);
+        page_offsets = slice(16, page_count * 4).asIntBuffer();
+
+        int dict = map.getInt(16 + page_count * 4); // stored right after the page offsets
+        term_starts = slice(dict, (term_count + 1) * 4).asIntBuffer();
+        posting_starts = slice(dict + (term_count + 1) * 4, (term_count + 1) * 4).asIntBuffer();
+        int chars = dict + (term_count + 1) * 8;
+        int char_count = term_starts.get(term_count);
+        term_chars = slice(chars, char_count * 2).asCharBuffer();
+        postings = slice(chars + char_count * 2, posting_starts.get(term_count) * 8).asIntBuffer();
+        tables = new WordTable[page_count];
+    }
+
+    static IndexSegment open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new IndexSegment(map);
+        } finally {
+            raf.close();
+        }
+    }
+
+    // Returns the postings of the term as (page, word) pairs, or null if the term does
+    // not occur in this segment.
+    int[] find(String term) {
+        int lo = 0, hi = term_count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareTerm(mid, term);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                int start = posting_starts.get(mid), end = posting_starts.get(mid + 1);
+                int[] result = new int[(end - start) * 2];
+                for (int i = 0; i < result.length; ++i) {
+                    result[i] = postings.get(start * 2 + i);
+                }
+                return result;
+            }
+        }
+        return null;
+    }
+
+    // Page numbers are 1 based.
+    synchronized WordTable getWordTable(int page_num) throws IOException {
+        WordTable table = tables[page_num - 1];
+        if (table == null) {
+            ByteBuffer buf = map.duplicate();
+            buf.position(page_offsets.get(page_num - 1));
+            table = tables[page_num - 1] = WordTable.read(buf);
+        }
+        return table;
+    }
+
+    // A growable list of (page, word) pairs.
+    private static class Postings {
+        int[] data = new int[4];
+        int size = 0; // in pairs
+
+        void add(int page_num, int word) {
+            if (data.length < 2 * size + 2) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[2 * size] = page_num;
+            data[2 * size + 1] = word;
+            ++size;
+        }
+    }
+
+    // Writes a segment for the given word tables (one per page, in page order).
+    static void write(File file, List<WordTable> pages) throws IOException {
+        // Collect the postings of every term.
+        Map<String, Postings> postings = new HashMap<String, Postings>();
+        for (WordTable table : pages) {
+            for (int w = 0; w < table.word_count; ++w) {
+                String term = TextIndex.normalize(table.text, table.text_start[w], table.getTextLength(w));
+                if (term == null) {
+                    continue;
+                }
+                Postings list = postings.get(term);
+                if (list == null) {
+                    list = new Postings();
+                    postings.put(term, list);
+                }
+                list.add(table.page_num, w);
+            }
+        }
+        String[] terms = postings.keySet().toArray(new String[postings.size()]);
+        Arrays.sort(terms);
+
+        int char_count = 0, posting_count = 0;
+        for (String t : terms) {
+            char_count += t.length();
+            posting_count += postings.get(t).size;
+        }
+        int header = 16 + pages.size() * 4 + 4;
+        int tables_size = 0;
+        for (WordTable t : pages) {
+            tables_size += t.getSerializedSize();
+        }
+        int dict = header + tables_size;
+        long size = (long) dict + (terms.length + 1) * 8L + char_count * 2L + posting_count * 8L;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Index segment too large");
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            channel.truncate(0);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            map.putInt(MAGIC).putInt(VERSION).putInt(pages.size()).putInt(terms.length);
+            int offset = header;
+            for (WordTable t : pages) {
+                map.putInt(offset);
+                offset += t.getSerializedSize();
+            }
+            map.putInt(dict);
+            for (WordTable t : pages) {
+                t.write(map);
+            }
+
+            int pos = 0;
+            for (String t : terms) {
+                map.putInt(pos);
+                pos += t.length();
+            }
+            map.putInt(pos);
+            pos = 0;
+            for (String t : terms) {
+                map.putInt(pos);
+                pos += postings.get(t).size;
+            }
+            map.putInt(pos);
+            for (String t : terms) {
+                for (int i = 0; i < t.length(); ++i) {
+                    map.putChar(t.charAt(i));
+                }
+            }
+            for (String t : terms) {
+                Postings list = postings.get(t);
+                for (int i = 0; i < 2 * list.size; ++i) {
+                    map.putInt(list.data[i]);
+                }
+            }
+            map.force();
+        } finally {
+            raf.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private int compareTerm(int i, String term) {
+        int start = term_starts.get(i), end = term_starts.get(i + 1);
+        int n = Math.min(end - start, term.length());
+        for (int k = 0; k < n; ++k) {
+            int d = term_chars.get(start + k) - term.charAt(k);
+            if (d != 0) {
+                return d;
+            }
+        }
+        return (end - start) - term.length();
+    }
+
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer buf = map.duplicate();
+        buf.position(offset);
+        buf.limit(offset + length);
+        return buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,294 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// MultiPatternSearch looks for any number of literal and regular expression patterns
+// at once (e.g. keyword lists and PII detectors), instead of running TextSearch again
+// for every pattern as TextSearchTest does.
+//
+// Every page is extracted once into a WordTable. All literal patterns are then matched
+// together in a single pass over the page text with an Aho-Corasick automaton, and the
+// regular expressions run over the same in-memory text. Every match carries the tag of
+// its pattern and the quads of the words it covers, in the same layout as
+// Highlights.getCurrentQuads().
+//
+// Patterns use the TextSearch mode flags: TextSearch.e_reg_expression,
+// TextSearch.e_case_sensitive and TextSearch.e_whole_word. As with TextSearch, words
+// on the page are separated by single spaces, and lines by new lines.
+//---------------------------------------------------------------------------------------
+public class MultiPatternSearch {
+
+    public static class Match {
+        public final String tag;
+        public final int page_num;
+        public final String text;
+        public final double[] quads;
+
+        Match(String tag, int page_num, String text, double[] quads) {
+            this.tag = tag;
+            this.page_num = page_num;
+            this.text = text;
+            this.quads = quads;
+        }
+    }
+
+    private static class Literal {
+        String tag;
+        String pattern;
+        int mode;
+    }
+
+    private static class Regex {
+        String tag;
+        Pattern pattern;
+        int mode;
+    }
+
+    private final List<Literal> literals = new ArrayList<Literal>();
+    private final List<Regex> regexes = new ArrayList<Regex>();
+
+    // Aho-Corasick automaton over the case folded literal patterns. Node 0 is the root;
+    // the children of node n are keys[n][i] -> targets[n][i], sorted by key.
+    private char[][] keys;
+    private int[][] targets;
+    private int[] fail;          // longest proper suffix that is also in the trie
+    private int[] output_link;   // nearest node along the fail chain with outputs, or -1
+    private int[][] outputs;     // literal pattern indices ending at each node
+    private boolean compiled = false;
+
+    // Adds a pattern. 'tag' is reported with every match of the pattern.
+    public synchronized void addPattern(String tag, String pattern, int mode) {
+        if ((mode & TextSearch.e_reg_expression) != 0) {
+            Regex r = new Regex();
+            r.tag = tag;
+            r.pattern = Pattern.compile(pattern, (mode & TextSearch.e_case_sensitive) != 0 ? 0 :
+                    Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            r.mode = mode;
+            regexes.add(r);
+        } else if (pattern.length() > 0) {
+            Literal l = new Literal();
+            l.tag = tag;
+            l.pattern = pattern;
+            l.mode = mode;
+            literals.add(l);
+            compiled = false;
+        }
+    }
+
+    public synchronized int getPatternCount() {
+        return literals.size() + regexes.size();
+    }
+
+    // Extracts every page of the document once and returns all matches, in page order.
+    public List<Match> search(PDFDoc doc, ParallelTextExtractor extractor) throws Exception {
+        compile();
+        final List<Match> matches = new ArrayList<Match>();
+        extractor.extract(doc, new ParallelTextExtractor.PageProcessor<List<Match>>() {
+            public List<Match> process(int page_num, TextExtractor txt) {
+                return search(WordTable.build(page_num, txt));
+            }
+        }, new ParallelTextExtractor.ResultHandler<List<Match>>() {
+            public void handle(int page_num, List<Match> page_matches) {
+                matches.addAll(page_matches);
+            }
+        });
+        return matches;
+    }
+
+    // Returns the matches on one page. May be called from several threads at once.
+    public List<Match> search(WordTable table) {
+        compile();
+
+        // Page text, with the word that each character belongs to (-1 for separators).
+        int length = Math.max(0, table.text.length + table.word_count - 1);
+        char[] text = new char[length];
+        int[] word_of = new int[length];
+        int pos = 0;
+        for (int w = 0; w < table.word_count; ++w) {
+            if (w > 0) {
+                text[pos] = table.line_id[w] != table.line_id[w - 1] ? '\n' : ' ';
+                word_of[pos++] = -1;
+            }
+            int n = table.getTextLength(w);
+            System.arraycopy(table.text, table.text_start[w], text, pos, n);
+            Arrays.fill(word_of, pos, pos + n, w);
+            pos += n;
+        }
+
+        List<Match> matches = new ArrayList<Match>();
+
+        // Literal patterns, all at once.
+        int node = 0;
+        for (int i = 0; i < length; ++i) {
+            char c = Character.toLowerCase(text[i]);
+            int next;
+            while ((next = child(node, c)) < 0 && node != 0) {
+                node = fail[node];
+            }
+            node = next < 0 ? 0 : next;
+            for (int o = outputs[node].length > 0 ? node : output_link[node]; o >= 0; o = output_link[o]) {
+                for (int p : outputs[o]) {
+                    Literal l = literals.get(p);
+                    int start = i + 1 - l.pattern.length();
+                    if ((l.mode & TextSearch.e_case_sensitive) != 0 && !regionMatches(text, start, l.pattern)) {
+                        continue;
+                    }
+                    if ((l.mode & TextSearch.e_whole_word) != 0 && !isWholeWord(text, start, i + 1)) {
+                        continue;
+                    }
+                    matches.add(createMatch(l.tag, table, text, word_of, start, i + 1));
+                }
+            }
+        }
+
+        // Regular expressions, over the same text.
+        CharSequence seq = CharBuffer.wrap(text);
+        for (Regex r : regexes) {
+            Matcher m = r.pattern.matcher(seq);
+            while (m.find()) {
+                if (m.end() == m.start()) {
+                    continue;
+                }
+                if ((r.mode & TextSearch.e_whole_word) != 0 && !isWholeWord(text, m.start(), m.end())) {
+                    continue;
+                }
+                matches.add(createMatch(r.tag, table, text, word_of, m.start(), m.end()));
+            }
+        }
+        return matches;
+    }
+
+    private static Match createMatch(String tag, WordTable table, char[] text, int[] word_of, int start, int end) {
+        int first = -1, last = -1;
+        for (int i = start; i < end; ++i) {
+            if (word_of[i] >= 0) {
+                if (first < 0) {
+                    first = word_of[i];
+                }
+                last = word_of[i];
+            }
+        }
+        double[] quads = new double[first < 0 ? 0 : 8 * (last - first + 1)];
+        for (int w = first; w >= 0 && w <= last; ++w) {
+            System.arraycopy(table.getQuad(w), 0, quads, 8 * (w - first), 8);
+        }
+        return new Match(tag, table.page_num, new String(text, start, end - start), quads);
+    }
+
+    private static boolean regionMatches(char[] text, int start, String pattern) {
+        for (int i = 0; i < pattern.length(); ++i) {
+            if (text[start + i] != pattern.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWholeWord(char[] text, int start, int end) {
+        return (start == 0 || !Character.isLetterOrDigit(text[start - 1]))
+                && (end == text.length || !Character.isLetterOrDigit(text[end]));
+    }
+
+    private int child(int node, char c) {
+        int i = Arrays.binarySearch(keys[node], c);
+        return i >= 0 ? targets[node][i] : -1;
+    }
+
+    // Builds the automaton for the current literal patterns.
+    private synchronized void compile() {
+        if (compiled) {
+            return;
+        }
+
+        // Trie.
+        List<char[]> key_list = new ArrayList<char[]>();
+        List<int[]> target_list = new ArrayList<int[]>();
+        List<int[]> output_list = new ArrayList<int[]>();
+        key_list.add(new char[0]);
+        target_list.add(new int[0]);
+        output_list.add(new int[0]);
+        for (int p = 0; p < literals.size(); ++p) {
+            String pattern = literals.get(p).pattern;
+            int node = 0;
+            for (int i = 0; i < pattern.length(); ++i) {
+                char c = Character.toLowerCase(pattern.charAt(i));
+                char[] k = key_list.get(node);
+                int idx = Arrays.binarySearch(k, c);
+                if (idx >= 0) {
+                    node = target_list.get(node)[idx];
+                    continue;
+                }
+                int ins = -idx - 1;
+                int created = key_list.size();
+                key_list.add(new char[0]);
+                target_list.add(new int[0]);
+                output_list.add(new int[0]);
+                key_list.set(node, insert(k, ins, c));
+                target_list.set(node, insert(target_list.get(node), ins, created));
+                node = created;
+            }
+            int[] out = output_list.get(node);
+            out = Arrays.copyOf(out, out.length + 1);
+            out[out.length - 1] = p;
+            output_list.set(node, out);
+        }
+
+        int n = key_list.size();
+        keys = key_list.toArray(new char[n][]);
+        targets = target_list.toArray(new int[n][]);
+        outputs = output_list.toArray(new int[n][]);
+        fail = new int[n];
+        output_link = new int[n];
+        Arrays.fill(output_link, -1);
+
+        // Failure and output links, in breadth-first order.
+        ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+        for (int t : targets[0]) {
+            fail[t] = 0;
+            queue.add(t);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < keys[node].length; ++i) {
+                char c = keys[node][i];
+                int t = targets[node][i];
+                int f = fail[node], next;
+                while ((next = child(f, c)) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[t] = next >= 0 && next != t ? next : 0;
+                output_link[t] = outputs[fail[t]].length > 0 ? fail[t] : output_link[fail[t]];
+                queue.add(t);
+            }
+        }
+        compiled = true;
+    }
+
+    private static char[] insert(char[] a, int i, char v) {
+        char[] r = new char[a.length + 1];
+        System.arraycopy(a, 0, r, 0, i);
+        r[i] = v;
+        System.arraycopy(a, i, r, i + 1, a.length - i);
+        return r;
+    }
+
+    private static int[] insert(int[] a, int i, int v) {
+        int[] r = new int[a.length + 1];
+        System.arraycopy(a, 0, r, 0, i);
+        r[i] = v;
+        System.arraycopy(a, i, r, i + 1, a.length - i);
+        return r;
+    }
+}
@@ -0,0 +1,190 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.pdftron.common.PDFNetException;
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// ParallelTextExtractor extracts the text of every page of a document on a number of
+// worker threads, and hands the results to the caller in page order.
+//
+// Each worker owns a TextExtractor and holds a read lock on the document while it
+// reads a page, so any number of pages can be extracted at the same time. The
+// PageProcessor turns the extractor's state into a result object on the worker
+// thread (e.g. a serialized text layer, see TextLayerWriter), and the ResultHandler
+// receives those results in page order on the calling thread. Flow and paragraph ids
+// are page relative, so they are unaffected by the order in which pages finish.
+//
+// At most 2 * concurrency pages are extracted ahead of the page that is being handed
+// to the ResultHandler, which keeps memory use bounded for large documents.
+//---------------------------------------------------------------------------------------
+public class ParallelTextExtractor {
+
+    // Called on a worker thread after TextExtractor.begin() for the page.
+    public interface PageProcessor<T> {
+        T process(int page_num, TextExtractor txt) throws Exception;
+    }
+
+    // Called on the calling thread, in page order.
+    public interface ResultHandler<T> {
+        void handle(int page_num, T result) throws Exception;
+    }
+
+    private static class PageResult<T> {
+        int page_num;
+        T result;
+        double millis;
+    }
+
+    private final int concurrency;
+    private final int flags;
+    private final ExecutorService executor;
+    private final BlockingQueue<TextExtractor> extractors;
+
+    // Per-page latencies of the last extract() call, in milliseconds.
+    private double[] latencies = new double[0];
+    private double total_millis = 0;
+
+    // 'flags' are the TextExtractor processing flags passed to begin(), e.g.
+    // TextExtractor.e_remove_hidden_text.
+    public ParallelTextExtractor(int concurrency, int flags) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+        this.concurrency = concurrency;
+        this.flags = flags;
+        executor = Executors.newFixedThreadPool(concurrency);
+        extractors = new ArrayBlockingQueue<TextExtractor>(concurrency);
+        for (int i = 0; i < concurrency; ++i) {
+            extractors.add(new TextExtractor());
+        }
+    }
+
+    public ParallelTextExtractor(int concurrency) {
+        this(concurrency, 0);
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    // Extracts all pages of the document.
+    public <T> void extract(PDFDoc doc, PageProcessor<T> processor, ResultHandler<T> handler) throws Exception {
+        int page_count;
+        doc.lockRead();
+        try {
+            page_count = doc.getPageCount();
+        } finally {
+            doc.unlockRead();
+        }
+        extract(doc, 1, page_count, processor, handler);
+    }
+
+    // Extracts pages 'start' to 'end' (inclusive).
+    public <T> void extract(PDFDoc doc, int start, int end, PageProcessor<T> processor, ResultHandler<T> handler) throws Exception {
+        long begin = System.nanoTime();
+        int look_ahead = 2 * concurrency;
+        double[] page_millis = new double[Math.max(0, end - start + 1)];
+        ArrayDeque<Future<PageResult<T>>> pending = new ArrayDeque<Future<PageResult<T>>>();
+        try {
+            int next_page = start;
+            for (int i = start; i <= end; ++i) {
+                while (next_page <= end && pending.size() < look_ahead) {
+                    pending.add(submit(doc, next_page++, processor));
+                }
+                PageResult<T> r = await(pending.removeFirst());
+                page_millis[r.page_num - start] = r.millis;
+                handler.handle(r.page_num, r.result);
+            }
+        } finally {
+            for (Future<PageResult<T>> f : pending) {
+                f.cancel(false);
+            }
+        }
+        latencies = page_millis;
+        total_millis = (System.nanoTime() - begin) / 1e6;
+    }
+
+    // Returns the extraction time of each page of the last extract() call, in
+    // milliseconds, indexed from the first extracted page.
+    public double[] getPageLatencies() {
+        return latencies.clone();
+    }
+
+    public String getStats() {
+        if (latencies.length == 0) {
+            return "no pages extracted";
+        }
+        double[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        double sum = 0;
+        for (double ms : sorted) {
+            sum += ms;
+        }
+        return String.format("%d pages in %.1f ms (%.1f pages/sec), per page: mean=%.2f ms, p50=%.2f ms, p95=%.2f ms, max=%.2f ms",
+                sorted.length, total_millis, sorted.length * 1000 / total_millis, sum / sorted.length,
+                percentile(sorted, 0.50), percentile(sorted, 0.95), sorted[sorted.length - 1]);
+    }
+
+    // Stops the worker threads and frees the text extractors.
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        for (TextExtractor txt : extractors) {
+            txt.destroy();
+        }
+        extractors.clear();
+    }
+
+    private <T> Future<PageResult<T>> submit(final PDFDoc doc, final int page_num, final PageProcessor<T> processor) {
+        return executor.submit(new Callable<PageResult<T>>() {
+            public PageResult<T> call() throws Exception {
+                TextExtractor txt = extractors.take();
+                try {
+                    long start = System.nanoTime();
+                    PageResult<T> r = new PageResult<T>();
+                    r.page_num = page_num;
+                    doc.lockRead();
+                    try {
+                        txt.begin(doc.getPage(page_num), null, flags);
+                        r.result = processor.process(page_num, txt);
+                    } finally {
+                        doc.unlockRead();
+                    }
+                    r.millis = (System.nanoTime() - start) / 1e6;
+                    return r;
+                } finally {
+                    extractors.put(txt);
+                }
+            }
+        });
+    }
+
+    private static double percentile(double[] sorted, double p) {
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+}
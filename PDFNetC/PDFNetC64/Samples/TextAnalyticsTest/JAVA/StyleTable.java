@@ -0,0 +1,176 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// StyleTable interns text styles: every distinct (font name, font size, serif, weight,
+// italic, RGB color) combination gets a small integer id, numbered from 0 in the order
+// the styles are first seen. Words and lines can then carry a style id instead of a
+// TextExtractor.Style object (see WordTable.style_id and TextLayerWriter), and the
+// properties of a style are read from the table's columns.
+//
+// A table can be used for one page or shared by all pages of a document, including by
+// several extraction threads at once; intern() is synchronized. Lookups use an open
+// addressing hash on the style columns rather than a map with key objects. Interning a
+// style that is already known adds no table entry and the lookup itself allocates
+// nothing, but reading the font name and color of a TextExtractor.Style still creates
+// a new String and Color on every call.
+//---------------------------------------------------------------------------------------
+public class StyleTable {
+
+    private static final int FLAG_SERIF = 1;
+    private static final int FLAG_ITALIC = 2;
+
+    private int size = 0;
+    private String[] font_name = new String[16];
+    private float[] font_size = new float[16];
+    private int[] weight = new int[16];
+    private int[] flags = new int[16];
+    private int[] rgb = new int[16];
+    private int[] slots = new int[32]; // style id + 1, or 0 for an empty slot
+
+    // Returns the id of the style, adding it to the table if it is new.
+    public int intern(TextExtractor.Style s) {
+        int f = (s.isSerif() ? FLAG_SERIF : 0) | (s.isItalic() ? FLAG_ITALIC : 0);
+        return intern(s.getFontName(), (float) s.getFontSize(), s.getWeight(), f, s.getColor().getRGB() & 0xFFFFFF);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized String getFontName(int id) {
+        return font_name[id];
+    }
+
+    public synchronized double getFontSize(int id) {
+        return font_size[id];
+    }
+
+    public synchronized int getWeight(int id) {
+        return weight[id];
+    }
+
+    public synchronized boolean isSerif(int id) {
+        return (flags[id] & FLAG_SERIF) != 0;
+    }
+
+    public synchronized boolean isItalic(int id) {
+        return (flags[id] & FLAG_ITALIC) != 0;
+    }
+
+    // Returns the color as 0xRRGGBB.
+    public synchronized int getRGB(int id) {
+        return rgb[id];
+    }
+
+    private synchronized int intern(String name, float fsize, int w, int f, int color) {
+        int mask = slots.length - 1;
+        int h = hash(name, fsize, w, f, color) & mask;
+        for (int slot; (slot = slots[h]) != 0; h = (h + 1) & mask) {
+            int id = slot - 1;
+            if (font_size[id] == fsize && rgb[id] == color && weight[id] == w && flags[id] == f && font_name[id].equals(name)) {
+                return id;
+            }
+        }
+        int id = add(name, fsize, w, f, color);
+        slots[h] = id + 1;
+        if (2 * size > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private int add(String name, float fsize, int w, int f, int color) {
+        if (size == font_name.length) {
+            int capacity = 2 * size;
+            font_name = Arrays.copyOf(font_name, capacity);
+            font_size = Arrays.copyOf(font_size, capacity);
+            weight = Arrays.copyOf(weight, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            rgb = Arrays.copyOf(rgb, capacity);
+        }
+        font_name[size] = name;
+        font_size[size] = fsize;
+        weight[size] = w;
+        flags[size] = f;
+        rgb[size] = color;
+        return size++;
+    }
+
+    private void rehash() {
+        slots = new int[2 * slots.length];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; ++id) {
+            int h = hash(font_name[id], font_size[id], weight[id], flags[id], rgb[id]) & mask;
+            while (slots[h] != 0) {
+                h = (h + 1) & mask;
+            }
+            slots[h] = id + 1;
+        }
+    }
+
+    private static int hash(String name, float fsize, int w, int f, int color) {
+        int h = name.hashCode();
+        h = 31 * h + Float.floatToIntBits(fsize);
+        h = 31 * h + color;
+        h = 31 * h + (w << 2 | f);
+        return h ^ (h >>> 16);
+    }
+
+    //------------------------------------------------------------------------------------
+    // Serialization, as part of a WordTable (little-endian):
+    //   int count, then per style: float font_size, int weight, int flags, int rgb,
+    //   int name_length, char name[name_length]
+
+    synchronized int getSerializedSize() {
+        int n = 4;
+        for (int id = 0; id < size; ++id) {
+            n += 20 + 2 * font_name[id].length();
+        }
+        return n;
+    }
+
+    synchronized void write(ByteBuffer buf) {
+        ByteBuffer out = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(size);
+        for (int id = 0; id < size; ++id) {
+            out.putFloat(font_size[id]).putInt(weight[id]).putInt(flags[id]).putInt(rgb[id]);
+            out.putInt(font_name[id].length());
+            for (int i = 0; i < font_name[id].length(); ++i) {
+                out.putChar(font_name[id].charAt(i));
+            }
+        }
+        buf.position(out.position());
+    }
+
+    static StyleTable read(ByteBuffer buf) throws IOException {
+        ByteBuffer in = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        StyleTable table = new StyleTable();
+        int count = in.getInt();
+        for (int id = 0; id < count; ++id) {
+            float fsize = in.getFloat();
+            int w = in.getInt(), f = in.getInt(), color = in.getInt();
+            int length = in.getInt();
+            if (length < 0 || length > in.remaining() / 2) {
+                throw new IOException("Truncated style table");
+            }
+            char[] name = new char[length];
+            in.asCharBuffer().get(name);
+            in.position(in.position() + 2 * length);
+            if (table.intern(new String(name), fsize, w, f, color) != id) {
+                throw new IOException("Duplicate style in style table");
+            }
+        }
+        buf.position(in.position());
+        return table;
+    }
+}
@@ -0,0 +1,260 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// The following sample illustrates how to process the text of large documents
+// efficiently on top of TextExtractor (see also TextExtractTest).
+//---------------------------------------------------------------------------------------
+public class TextAnalyticsTest {
+    public static void main(String[] args) {
+        PDFNet.initialize();
+
+        // Relative path to the folder containing test files.
+        String input_path = "../../TestFiles/";
+        String output_path = "../../TestFiles/Output/";
+
+        //--------------------------------------------------------------------------------
+        // Example 1) Export the text layer of a document (flows, paragraphs, lines and
+        // words, with positions and styles) as XML and as JSON. The output is streamed
+        // to the file page by page.
+        try {
+            PDFDoc doc = new PDFDoc(input_path + "newsletter.pdf");
+            doc.initSecurityHandler();
+            TextExtractor txt = new TextExtractor();
+
+            int[] formats = {TextLayerWriter.e_xml, TextLayerWriter.e_json};
+            String[] files = {"newsletter_text.xml", "newsletter_text.json"};
+            for (int i = 0; i < formats.length; ++i) {
+                long start = System.nanoTime();
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(output_path + files[i]));
+                try {
+                    TextLayerWriter writer = new TextLayerWriter(out, formats[i]);
+                    writer.beginDocument();
+                    for (PageIterator itr = doc.getPageIterator(); itr.hasNext(); ) {
+                        Page page = itr.next();
+                        txt.begin(page);
+                        writer.writePage(page.getIndex(), txt);
+                    }
+                    writer.endDocument();
+                } finally {
+                    out.close();
+                }
+                System.out.println(String.format("Example 1: %s (%.1f ms)", files[i], (System.nanoTime() - start) / 1e6));
+            }
+
+            txt.destroy();
+            doc.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        //--------------------------------------------------------------------------------
+        // Example 2) Extract the text layer of all pages on four threads. Every worker
+        // serializes its page separately, and the pages are merged into a single XML
+        // document in page order. Words refer to a shared table of the distinct styles
+        // in the document by id.
+        try {
+            PDFDoc doc = new PDFDoc(input_path + "newsletter.pdf");
+            doc.initSecurityHandler();
+
+            ParallelTextExtractor extractor = new ParallelTextExtractor(4);
+            final StyleTable styles = new StyleTable();
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(output_path + "newsletter_text_parallel.xml"));
+            try {
+                final TextLayerWriter writer = new TextLayerWriter(out, TextLayerWriter.e_xml, styles);
+                writer.beginDocument();
+                extractor.extract(doc, new ParallelTextExtractor.PageProcessor<String>() {
+                    public String process(int page_num, TextExtractor txt) throws Exception {
+                        StringWriter page = new StringWriter();
+                        TextLayerWriter page_writer = new TextLayerWriter(page, TextLayerWriter.e_xml, styles);
+                        page_writer.writePage(page_num, txt);
+                        page_writer.flush();
+                        return page.toString();
+                    }
+                }, new ParallelTextExtractor.ResultHandler<String>() {
+                    public void handle(int page_num, String page) throws Exception {
+                        writer.writeFragment(page);
+                    }
+                });
+                writer.endDocument();
+            } finally {
+                out.close();
+            }
+            System.out.println("Example 2: newsletter_text_parallel.xml, " + styles.size() + " distinct styles");
+            System.out.println("Example 2: " + extractor.getStats());
+
+            extractor.shutdown();
+            doc.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        //--------------------------------------------------------------------------------
+        // Example 3) Copy the words of every page into compact word tables, save one of
+        // them to a memory-mapped file, and hit-test it after loading it back.
+        try {
+            PDFDoc doc = new PDFDoc(input_path + "newsletter.pdf");
+            doc.initSecurityHandler();
+
+            final List<WordTable> tables = new ArrayList<WordTable>();
+            ParallelTextExtractor extractor = new ParallelTextExtractor(4);
+            extractor.extract(doc, new ParallelTextExtractor.PageProcessor<WordTable>() {
+                public WordTable process(int page_num, TextExtractor txt) {
+                    return WordTable.build(page_num, txt);
+                }
+            }, new ParallelTextExtractor.ResultHandler<WordTable>() {
+                public void handle(int page_num, WordTable table) {
+                    tables.add(table);
+                }
+            });
+            extractor.shutdown();
+            doc.close();
+
+            int words = 0;
+            long bytes = 0;
+            for (WordTable table : tables) {
+                words += table.word_count;
+                bytes += table.getSerializedSize();
+            }
+            System.out.println("Example 3: " + words + " words in " + tables.size() + " word tables (" + bytes + " bytes)");
+
+            tables.get(0).save(output_path + "newsletter_page1.words");
+            WordTable table = WordTable.load(output_path + "newsletter_page1.words");
+            if (table.word_count > 0) {
+                int mid = table.word_count / 2;
+                double x = (table.x1[mid] + table.x2[mid]) / 2, y = (table.y1[mid] + table.y2[mid]) / 2;
+                int hit = table.hitTest(x, y);
+                System.out.println(String.format("Example 3: word at (%.1f, %.1f) is '%s' (%s, %.1f pt), in context: %s",
+                        x, y, table.getText(hit), table.styles.getFontName(table.style_id[hit]),
+                        table.styles.getFontSize(table.style_id[hit]), table.getSnippet(hit, hit, 3).replace('\n', ' ')));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        //--------------------------------------------------------------------------------
+        // Example 4) Build a persistent full-text index over several documents and query
+        // it. Running the sample again only re-indexes documents that have changed.
+        try {
+            TextIndex index = new TextIndex(new File(output_path + "text_index"), 4);
+            String[] files = {"newsletter.pdf", "lorem_ipsum.pdf", "tagged.pdf", "numbered.pdf"};
+            for (String file : files) {
+                long start = System.nanoTime();
+                boolean updated = index.update(input_path + file);
+                System.out.println(String.format("Example 4: %s %s (%.1f ms)",
+                        file, updated ? "indexed" : "is up to date", (System.nanoTime() - start) / 1e6));
+            }
+            index.commit();
+
+            String[] queries = {"PDF", "lorem ipsum", "dolor sit amet"};
+            for (String query : queries) {
+                long start = System.nanoTime();
+                List<TextIndex.Hit> hits = index.search(query, 100);
+                System.out.println(String.format("Example 4: '%s' found %d time(s) in %.2f ms", query, hits.size(), (System.nanoTime() - start) / 1e6));
+                if (!hits.isEmpty()) {
+                    TextIndex.Hit hit = hits.get(0);
+                    System.out.println(String.format("  %s, page %d at (%.1f, %.1f): %s", new File(hit.doc_path).getName(),
+                            hit.page_num, hit.quads[0], hit.quads[1], hit.snippet.replace('\n', ' ')));
+                }
+            }
+            index.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        //--------------------------------------------------------------------------------
+        // Example 5) Extract text from several rectangles of the same page, as
+        // ReadTextFromRect() in TextExtractTest does, but read the page only once.
+        try {
+            PDFDoc doc = new PDFDoc(input_path + "newsletter.pdf");
+            doc.initSecurityHandler();
+
+            ElementReader reader = new ElementReader();
+            TextRegionIndex regions = TextRegionIndex.build(doc.getPage(1), reader);
+            reader.destroy();
+            System.out.println("Example 5: " + regions.getElementCount() + " text elements on page 1");
+
+            Rect[] fields = {new Rect(27, 392, 563, 534), new Rect(28, 551, 106, 623), new Rect(208, 550, 387, 621)};
+            for (int i = 0; i < fields.length; ++i) {
+                System.out.println("Field " + (i + 1) + ": " + regions.getText(fields[i]));
+            }
+            doc.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        //--------------------------------------------------------------------------------
+        // Example 6) Look for a name, credit card numbers and a list of keywords at once,
+        // as TextSearchTest does one pattern at a time. Every page is extracted and
+        // scanned only once.
+        try {
+            PDFDoc doc = new PDFDoc(input_path + "credit card numbers.pdf");
+            doc.initSecurityHandler();
+
+            MultiPatternSearch search = new MultiPatternSearch();
+            search.addPattern("name", "joHn sMiTh", TextSearch.e_whole_word);
+            search.addPattern("card", "\\d{4}-\\d{4}-\\d{4}-\\d{4}", TextSearch.e_reg_expression);
+            search.addPattern("amex", "\\d{4}-\\d{6}-\\d{5}", TextSearch.e_reg_expression);
+            String[] keywords = {"credit", "card", "number", "expiration", "visa", "mastercard"};
+            for (String keyword : keywords) {
+                search.addPattern("keyword", keyword, TextSearch.e_whole_word);
+            }
+
+            ParallelTextExtractor extractor = new ParallelTextExtractor(4);
+            long start = System.nanoTime();
+            List<MultiPatternSearch.Match> matches = search.search(doc, extractor);
+            System.out.println(String.format("Example 6: %d patterns, %d matches in %.1f ms",
+                    search.getPatternCount(), matches.size(), (System.nanoTime() - start) / 1e6));
+            for (MultiPatternSearch.Match m : matches) {
+                if (m.quads.length > 0) {
+                    System.out.println(String.format("  [%s] page %d at (%.1f, %.1f): %s",
+                            m.tag, m.page_num, m.quads[0], m.quads[1], m.text.replace('\n', ' ')));
+                }
+            }
+            extractor.shutdown();
+            doc.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        //--------------------------------------------------------------------------------
+        // Example 7) Extract the words of a document twice through a cache keyed by page
+        // content. The second pass, and any later run of the sample, reads the words from
+        // the cache instead of extracting them again.
+        try {
+            PDFDoc doc = new PDFDoc(input_path + "newsletter.pdf");
+            doc.initSecurityHandler();
+            TextExtractor txt = new TextExtractor();
+            ExtractionCache cache = new ExtractionCache(new File(output_path + "text_cache"), 16 * 1024 * 1024);
+
+            for (int pass = 1; pass <= 2; ++pass) {
+                long start = System.nanoTime();
+                int words = 0;
+                for (int i = 1; i <= doc.getPageCount(); ++i) {
+                    words += cache.getWordTable(doc, i, txt, 0).word_count;
+                }
+                System.out.println(String.format("Example 7: pass %d, %d words in %.1f ms", pass, words, (System.nanoTime() - start) / 1e6));
+            }
+            System.out.println("Example 7: " + cache.getStats());
+
+            txt.destroy();
+            doc.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        PDFNet.terminate();
+    }
+}
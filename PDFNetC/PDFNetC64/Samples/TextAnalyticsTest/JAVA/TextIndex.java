@@ -0,0 +1,384 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// TextIndex is a persistent full-text index over a collection of PDF documents. Terms
+// are mapped to (document, page, word ordinal) postings, and the word geometry of every
+// page is stored alongside, so that search results come with highlight quads and
+// snippets without opening the PDF again.
+//
+// Each document is stored in its own IndexSegment file in the index directory, and
+// 'index.txt' lists the documents with the SHA-1 hash of their contents. update()
+// only re-extracts documents whose hash has changed, and commit() makes the changes
+// durable; segments are never modified, only replaced.
+//
+// Queries are whole-word and case-insensitive; a query with several words matches
+// them as a phrase. Terms are looked up by binary search in the memory-mapped term
+// dictionary of each segment.
+//---------------------------------------------------------------------------------------
+public class TextIndex {
+
+    public static class Hit {
+        public final String doc_path;
+        public final int page_num;
+        public final int word;          // ordinal of the first word in the page's WordTable
+        public final int word_count;
+        public final double[] quads;    // 8 values per word, as in Highlights.getCurrentQuads()
+        public final String snippet;
+
+        Hit(String doc_path, int page_num, int word, int word_count, double[] quads, String snippet) {
+            this.doc_path = doc_path;
+            this.page_num = page_num;
+            this.word = word;
+            this.word_count = word_count;
+            this.quads = quads;
+            this.snippet = snippet;
+        }
+    }
+
+    private static class Entry {
+        int id;
+        String hash;
+        String path;
+        IndexSegment segment; // opened on first use
+    }
+
+    private static final String REGISTRY = "index.txt";
+    private static final String END = "end"; // last line of a completely written registry
+
+    private final File dir;
+    private final ParallelTextExtractor extractor;
+    private final Map<String, Entry> docs = new LinkedHashMap<String, Entry>();
+    private final List<Entry> obsolete = new ArrayList<Entry>(); // deleted on commit()
+    private int next_id = 1;
+
+    // Opens or creates the index in 'dir'. Documents are extracted on 'concurrency'
+    // threads.
+    public TextIndex(File dir, int concurrency) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create index directory: " + dir);
+        }
+        this.dir = dir;
+        this.extractor = new ParallelTextExtractor(concurrency);
+        loadRegistry();
+    }
+
+    // Adds the document to the index, or re-indexes it if its contents changed since it
+    // was indexed. Returns false if the index was already up to date.
+    public synchronized boolean update(String path) throws Exception {
+        String hash = hashFile(path);
+        Entry old = docs.get(path);
+        if (old != null && old.hash.equals(hash)) {
+            return false;
+        }
+
+        Entry entry = new Entry();
+        entry.id = next_id++;
+        entry.hash = hash;
+        entry.path = path;
+
+        final List<WordTable> pages = new ArrayList<WordTable>();
+        PDFDoc doc = new PDFDoc(path);
+        try {
+            doc.initSecurityHandler();
+            extractor.extract(doc, new ParallelTextExtractor.PageProcessor<WordTable>() {
+                public WordTable process(int page_num, TextExtractor txt) {
+                    return WordTable.build(page_num, txt);
+                }
+            }, new ParallelTextExtractor.ResultHandler<WordTable>() {
+                public void handle(int page_num, WordTable table) {
+                    pages.add(table);
+                }
+            });
+        } finally {
+            doc.close();
+        }
+        IndexSegment.write(getSegmentFile(entry.id), pages);
+
+        docs.put(path, entry);
+        if (old != null) {
+            old.segment = null;
+            obsolete.add(old);
+        }
+        return true;
+    }
+
+    // Removes the document from the index. Returns false if it was not indexed.
+    public synchronized boolean remove(String path) {
+        Entry old = docs.remove(path);
+        if (old == null) {
+            return false;
+        }
+        old.segment = null;
+        obsolete.add(old);
+        return true;
+    }
+
+    // Saves the list of indexed documents. Until then, a crash leaves the index as of
+    // the previous commit (new segments are simply ignored).
+    public synchronized void commit() throws IOException {
+        File tmp = new File(dir, REGISTRY + ".tmp");
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+        try {
+            out.println("next_id\t" + next_id);
+            for (Entry e : docs.values()) {
+                out.println(e.id + "\t" + e.hash + "\t" + e.path);
+            }
+            out.println(END);
+            if (out.checkError()) {
+                throw new IOException("Cannot write " + tmp);
+            }
+        } finally {
+            out.close();
+        }
+        // Readers see either the old or the new registry, also after a crash.
+        Files.move(tmp.toPath(), new File(dir, REGISTRY).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // The segments of removed and re-indexed documents are no longer referenced. If
+        // a file is still mapped (e.g. on Windows), it is removed the next time the
+        // index is opened.
+        for (Entry e : obsolete) {
+            getSegmentFile(e.id).delete();
+        }
+        obsolete.clear();
+    }
+
+    public synchronized int getDocumentCount() {
+        return docs.size();
+    }
+
+    // Finds up to 'max_hits' occurrences of 'query' (one or more words).
+    public synchronized List<Hit> search(String query, int max_hits) throws IOException {
+        List<String> terms = new ArrayList<String>();
+        for (String word : query.trim().split("\\s+")) {
+            String term = normalize(word.toCharArray(), 0, word.length());
+            if (term != null) {
+                terms.add(term);
+            }
+        }
+        List<Hit> hits = new ArrayList<Hit>();
+        if (terms.isEmpty()) {
+            return hits;
+        }
+
+        int[][] postings = new int[terms.size()][];
+        for (Entry e : docs.values()) {
+            IndexSegment segment = getSegment(e);
+            boolean all = true;
+            for (int t = 0; t < postings.length && all; ++t) {
+                postings[t] = segment.find(terms.get(t));
+                all = postings[t] != null;
+            }
+            if (!all) {
+                continue;
+            }
+
+            int[] first = postings[0];
+            for (int i = 0; i < first.length; i += 2) {
+                int page_num = first[i], word = first[i + 1];
+                boolean phrase = true;
+                for (int t = 1; t < postings.length && phrase; ++t) {
+                    phrase = contains(postings[t], page_num, word + t);
+                }
+                if (!phrase) {
+                    continue;
+                }
+
+                WordTable table = segment.getWordTable(page_num);
+                double[] quads = new double[8 * terms.size()];
+                for (int t = 0; t < terms.size(); ++t) {
+                    System.arraycopy(table.getQuad(word + t), 0, quads, 8 * t, 8);
+                }
+                hits.add(new Hit(e.path, page_num, word, terms.size(), quads,
+                        table.getSnippet(word, word + terms.size() - 1, 5)));
+                if (hits.size() >= max_hits) {
+                    return hits;
+                }
+            }
+        }
+        return hits;
+    }
+
+    public void close() throws InterruptedException {
+        extractor.shutdown();
+    }
+
+    // Turns a word into an index term: leading and trailing punctuation is removed and
+    // the remaining characters are converted to lower case. Returns null if nothing is
+    // left.
+    static String normalize(char[] text, int start, int length) {
+        int begin = start, end = start + length;
+        while (begin < end && !Character.isLetterOrDigit(text[begin])) {
+            ++begin;
+        }
+        while (end > begin && !Character.isLetterOrDigit(text[end - 1])) {
+            --end;
+        }
+        if (begin == end) {
+            return null;
+        }
+        char[] term = new char[end - begin];
+        for (int i = 0; i < term.length; ++i) {
+            term[i] = Character.toLowerCase(text[begin + i]);
+        }
+        return new String(term);
+    }
+
+    // Postings are sorted (page, word) pairs.
+    private static boolean contains(int[] postings, int page_num, int word) {
+        int lo = 0, hi = postings.length / 2 - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int p = postings[2 * mid], w = postings[2 * mid + 1];
+            int cmp = p != page_num ? Integer.compare(p, page_num) : Integer.compare(w, word);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private IndexSegment getSegment(Entry e) throws IOException {
+        if (e.segment == null) {
+            e.segment = IndexSegment.open(getSegmentFile(e.id));
+        }
+        return e.segment;
+    }
+
+    private File getSegmentFile(int id) {
+        return new File(dir, id + ".seg");
+    }
+
+    private void loadRegistry() throws IOException {
+        File registry = new File(dir, REGISTRY);
+        File tmp = new File(dir, REGISTRY + ".tmp");
+        if (!registry.exists() && tmp.exists()) {
+            // A crash while the first registry was written, or while an older version of
+            // this class replaced the registry. Use the new registry if it is complete;
+            // otherwise keep all segments, since it is unknown which ones are used.
+            if (!readRegistry(tmp)) {
+                docs.clear();
+                next_id = Math.max(next_id, getMaxSegmentId() + 1);
+                return;
+            }
+            Files.move(tmp.toPath(), registry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } else if (registry.exists()) {
+            readRegistry(registry);
+        }
+
+        // Remove segments that are not referenced, e.g. left behind by a crash before
+        // commit() or by a re-indexed document.
+        Set<String> used = new HashSet<String>();
+        for (Entry e : docs.values()) {
+            used.add(getSegmentFile(e.id).getName());
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                String name = f.getName();
+                if ((name.endsWith(".seg") || name.endsWith(".seg.tmp")) && !used.contains(name)) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    // Reads the documents listed in 'file' and returns whether it was written
+    // completely.
+    private boolean readRegistry(File file) throws IOException {
+        boolean complete = false;
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] cols = line.split("\t", 3);
+                complete = cols[0].equals(END);
+                if (cols[0].equals("next_id")) {
+                    next_id = Integer.parseInt(cols[1]);
+                } else if (cols.length == 3) {
+                    Entry e = new Entry();
+                    e.id = Integer.parseInt(cols[0]);
+                    e.hash = cols[1];
+                    e.path = cols[2];
+                    docs.put(e.path, e);
+                }
+            }
+        } catch (NumberFormatException e) {
+            return false; // a truncated line
+        } finally {
+            in.close();
+        }
+        return complete;
+    }
+
+    private int getMaxSegmentId() {
+        int max = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                String name = f.getName();
+                if (name.endsWith(".seg")) {
+                    try {
+                        max = Math.max(max, Integer.parseInt(name.substring(0, name.length() - 4)));
+                    } catch (NumberFormatException e) {
+                        // not a segment
+                    }
+                }
+            }
+        }
+        return max;
+    }
+
+    private static String hashFile(String path) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        InputStream in = new FileInputStream(path);
+        try {
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                md.update(buf, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
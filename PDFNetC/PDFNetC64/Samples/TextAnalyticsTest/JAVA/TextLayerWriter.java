@@ -0,0 +1,518 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import com.pdftron.common.PDFNetException;
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// TextLayerWriter streams the text layer of a document (flows, paragraphs, lines and
+// words with their bounding boxes and styles, as in TextExtractTest Example 4) as XML
+// or JSON to a Writer or an OutputStream.
+//
+// Output is collected in a fixed size character buffer and flushed in chunks. Numbers
+// are formatted by hand, directly into that buffer, instead of going through
+// String.format() or DecimalFormat, and bounding boxes are fetched with a single
+// Rect.get() call. Apart from the strings returned by PDFNet, writing a page does not
+// allocate.
+//
+// If the writer is given a StyleTable, lines and words carry a 'style_id' attribute
+// instead of a full style, and the distinct styles are written once, at the end of the
+// document. The table can be shared with the writers of other threads, so that page
+// fragments (see writeFragment()) use the same ids.
+//---------------------------------------------------------------------------------------
+public class TextLayerWriter {
+
+    public static final int e_xml = 0;
+    public static final int e_json = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final long[] POW10 = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    private final int format;
+    private final StyleTable styles; // null: inline styles
+    private final Writer writer;
+    private final OutputStream stream;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer bytes;
+    private final char[] buf = new char[BUFFER_SIZE];
+    private final char[] digits = new char[20];
+    private int len = 0;
+
+    private int page_count = 0;
+    private boolean first_item; // JSON: no comma before the next array element
+
+    public TextLayerWriter(Writer writer, int format, StyleTable styles) {
+        this.format = format;
+        this.styles = styles;
+        this.writer = writer;
+        this.stream = null;
+        this.encoder = null;
+        this.bytes = null;
+    }
+
+    public TextLayerWriter(Writer writer, int format) {
+        this(writer, format, null);
+    }
+
+    // Writes UTF-8 encoded output to 'stream'.
+    public TextLayerWriter(OutputStream stream, int format, StyleTable styles) {
+        this.format = format;
+        this.styles = styles;
+        this.writer = null;
+        this.stream = stream;
+        this.encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocate(BUFFER_SIZE * 3);
+    }
+
+    public TextLayerWriter(OutputStream stream, int format) {
+        this(stream, format, null);
+    }
+
+    public void beginDocument() throws IOException {
+        if (format == e_xml) {
+            append("<PDFText>\n");
+        } else {
+            append("{\"pages\":[");
+        }
+    }
+
+    // Writes the page that 'txt' was started on (see TextExtractor.begin()).
+    public void writePage(int page_num, TextExtractor txt) throws IOException, PDFNetException {
+        if (format == e_xml) {
+            append("<Page num=\"").append(page_num).append("\">\n");
+        } else {
+            if (page_count > 0) {
+                append(',');
+            }
+            append("{\"num\":").append(page_num).append(",\"flows\":[");
+        }
+
+        int cur_flow_id = -1, cur_para_id = -1;
+        for (TextExtractor.Line line = txt.getFirstLine(); line.isValid(); line = line.getNextLine()) {
+            if (line.getNumWords() == 0) {
+                continue;
+            }
+            int flow_id = line.getFlowID();
+            int para_id = line.getParagraphID();
+            if (cur_flow_id != flow_id) {
+                if (cur_flow_id != -1) {
+                    endPara();
+                    endFlow();
+                    cur_para_id = -1;
+                }
+                beginFlow(flow_id, cur_flow_id == -1);
+                cur_flow_id = flow_id;
+            }
+            if (cur_para_id != para_id) {
+                if (cur_para_id != -1) {
+                    endPara();
+                }
+                beginPara(para_id, cur_para_id == -1);
+                cur_para_id = para_id;
+            }
+            writeLine(line);
+        }
+        if (cur_flow_id != -1) {
+            endPara();
+            endFlow();
+        }
+
+        if (format == e_xml) {
+            append("</Page>\n");
+        } else {
+            append("]}");
+        }
+        ++page_count;
+        if (len > BUFFER_SIZE / 2) {
+            flushBuffer();
+        }
+    }
+
+    // Writes a page that was serialized by writePage() of another TextLayerWriter of
+    // the same format, e.g. on a worker thread (see ParallelTextExtractor).
+    public void writeFragment(CharSequence page) throws IOException {
+        if (format == e_json && page_count > 0) {
+            append(',');
+        }
+        append(page.toString());
+        ++page_count;
+        if (len > BUFFER_SIZE / 2) {
+            flushBuffer();
+        }
+    }
+
+    public void endDocument() throws IOException {
+        if (format == e_xml) {
+            if (styles != null) {
+                writeXMLStyles();
+            }
+            append("</PDFText>\n");
+        } else {
+            append(']');
+            if (styles != null) {
+                writeJSONStyles();
+            }
+            append("}\n");
+        }
+        flush();
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+        if (writer != null) {
+            writer.flush();
+        } else {
+            stream.flush();
+        }
+    }
+
+    public int getPageCount() {
+        return page_count;
+    }
+
+    //------------------------------------------------------------------------------------
+    // Structure
+
+    private void beginFlow(int id, boolean first) throws IOException {
+        if (format == e_xml) {
+            append("<Flow id=\"").append(id).append("\">\n");
+        } else {
+            if (!first) {
+                append(',');
+            }
+            append("{\"id\":").append(id).append(",\"paras\":[");
+        }
+    }
+
+    private void endFlow() throws IOException {
+        append(format == e_xml ? "</Flow>\n" : "]}");
+    }
+
+    private void beginPara(int id, boolean first) throws IOException {
+        if (format == e_xml) {
+            append("<Para id=\"").append(id).append("\">\n");
+        } else {
+            if (!first) {
+                append(',');
+            }
+            append("{\"id\":").append(id).append(",\"lines\":[");
+        }
+        first_item = true;
+    }
+
+    private void endPara() throws IOException {
+        append(format == e_xml ? "</Para>\n" : "]}");
+    }
+
+    private void writeLine(TextExtractor.Line line) throws IOException, PDFNetException {
+        TextExtractor.Style line_style = line.getStyle();
+        int line_style_id = styles != null ? styles.intern(line_style) : -1;
+        if (format == e_xml) {
+            append("<Line box=\"");
+            appendBox(line.getBBox());
+            append('"');
+            if (styles != null) {
+                append(" style_id=\"").append(line_style_id).append('"');
+            } else {
+                appendXMLStyle(line_style);
+            }
+            append(" cur_num=\"").append(line.getCurrentNum()).append("\">\n");
+        } else {
+            if (!first_item) {
+                append(',');
+            }
+            first_item = false;
+            append("{\"box\":[");
+            appendBox(line.getBBox());
+            append("],\"cur_num\":").append(line.getCurrentNum());
+            if (styles != null) {
+                append(",\"style_id\":").append(line_style_id);
+            } else {
+                append(",\"style\":");
+                appendJSONStyle(line_style);
+            }
+            append(",\"words\":[");
+        }
+
+        boolean first_word = true;
+        for (TextExtractor.Word word = line.getFirstWord(); word.isValid(); word = word.getNextWord()) {
+            if (word.getStringLen() == 0) {
+                continue;
+            }
+            TextExtractor.Style style = word.getStyle();
+            boolean same_style = style.equals(line_style);
+            if (format == e_xml) {
+                append("<Word box=\"");
+                appendBox(word.getBBox());
+                append("\" cur_num=\"").append(word.getCurrentNum()).append('"');
+                if (styles != null) {
+                    append(" style_id=\"").append(same_style ? line_style_id : styles.intern(style)).append('"');
+                } else if (!same_style) {
+                    appendXMLStyle(style);
+                }
+                append('>');
+                appendEscaped(word.getString());
+                append("</Word>\n");
+            } else {
+                if (!first_word) {
+                    append(',');
+                }
+                append("{\"box\":[");
+                appendBox(word.getBBox());
+                append("],\"cur_num\":").append(word.getCurrentNum());
+                if (styles != null) {
+                    append(",\"style_id\":").append(same_style ? line_style_id : styles.intern(style));
+                } else if (!same_style) {
+                    append(",\"style\":");
+                    appendJSONStyle(style);
+                }
+                append(",\"text\":\"");
+                appendEscaped(word.getString());
+                append("\"}");
+            }
+            first_word = false;
+        }
+
+        append(format == e_xml ? "</Line>\n" : "]}");
+    }
+
+    private void appendXMLStyle(TextExtractor.Style s) throws IOException {
+        appendXMLStyle(s.getFontName(), s.getFontSize(), s.isSerif(), s.getColor().getRGB());
+    }
+
+    // Same attributes as printStyle() in TextExtractTest.
+    private void appendXMLStyle(String font_name, double font_size, boolean serif, int rgb) throws IOException {
+        append(" style=\"font-family:");
+        appendEscaped(font_name);
+        append("; font-size:");
+        appendFixed(font_size, 1, true);
+        append(serif ? "; sans-serif; color:#" : "; color:#");
+        appendColor(rgb);
+        append(";\"");
+    }
+
+    private void appendJSONStyle(TextExtractor.Style s) throws IOException {
+        append('{');
+        appendJSONStyleFields(s.getFontName(), s.getFontSize(), s.isSerif(), s.getWeight(), s.isItalic(), s.getColor().getRGB());
+        append('}');
+    }
+
+    private void appendJSONStyleFields(String font_name, double font_size, boolean serif, int weight, boolean italic, int rgb) throws IOException {
+        append("\"font_family\":\"");
+        appendEscaped(font_name);
+        append("\",\"font_size\":");
+        appendFixed(font_size, 1, true);
+        append(",\"serif\":").append(serif ? "true" : "false");
+        append(",\"weight\":").append(weight);
+        append(",\"italic\":").append(italic ? "true" : "false");
+        append(",\"color\":\"#");
+        appendColor(rgb);
+        append('"');
+    }
+
+    // The style table, after the last page.
+    private void writeXMLStyles() throws IOException {
+        append("<Styles>\n");
+        for (int id = 0, n = styles.size(); id < n; ++id) {
+            append("<Style id=\"").append(id).append('"');
+            appendXMLStyle(styles.getFontName(id), styles.getFontSize(id), styles.isSerif(id), styles.getRGB(id));
+            append("/>\n");
+        }
+        append("</Styles>\n");
+    }
+
+    private void writeJSONStyles() throws IOException {
+        append(",\"styles\":[");
+        for (int id = 0, n = styles.size(); id < n; ++id) {
+            if (id > 0) {
+                append(',');
+            }
+            append("{\"id\":").append(id).append(',');
+            appendJSONStyleFields(styles.getFontName(id), styles.getFontSize(id), styles.isSerif(id),
+                    styles.getWeight(id), styles.isItalic(id), styles.getRGB(id));
+            append('}');
+        }
+        append(']');
+    }
+
+    //------------------------------------------------------------------------------------
+    // Formatting
+
+    private void appendBox(Rect r) throws IOException, PDFNetException {
+        double[] v = r.get(); // x1, y1, x2, y2 in one call
+        for (int i = 0; i < 4; ++i) {
+            if (i > 0) {
+                append(", ");
+            }
+            appendFixed(v[i], 2, false);
+        }
+    }
+
+    private void appendColor(int rgb) throws IOException {
+        ensure(6);
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            buf[len++] = HEX[(rgb >> shift) & 0xF];
+        }
+    }
+
+    // Appends 'v' with 'decimals' digits after the decimal point, rounded half away from
+    // zero. If 'trim' is set, trailing zeros (and the decimal point) are left out, as in
+    // DecimalFormat("#.#").
+    void appendFixed(double v, int decimals, boolean trim) throws IOException {
+        if (Double.isNaN(v) || Double.isInfinite(v)) {
+            append(format == e_json ? "null" : Double.toString(v));
+            return;
+        }
+        long scaled = Math.round(Math.abs(v) * POW10[decimals]);
+        if (scaled < 0 || scaled == Long.MAX_VALUE) {
+            append(Double.toString(v)); // too large for fixed point
+            return;
+        }
+        long int_part = scaled / POW10[decimals];
+        long frac_part = scaled % POW10[decimals];
+        if (trim) {
+            while (decimals > 0 && frac_part % 10 == 0) {
+                frac_part /= 10;
+                --decimals;
+            }
+        }
+
+        ensure(22 + decimals);
+        if (v < 0 && scaled != 0) {
+            buf[len++] = '-';
+        }
+        appendLong(int_part);
+        if (decimals > 0) {
+            buf[len++] = '.';
+            for (int i = decimals - 1; i >= 0; --i) {
+                buf[len + i] = (char) ('0' + frac_part % 10);
+                frac_part /= 10;
+            }
+            len += decimals;
+        }
+    }
+
+    private TextLayerWriter append(long v) throws IOException {
+        ensure(21);
+        if (v < 0) {
+            buf[len++] = '-';
+            v = -v;
+        }
+        appendLong(v);
+        return this;
+    }
+
+    // Non-negative values only; the caller makes room in the buffer.
+    private void appendLong(long v) {
+        int n = 0;
+        do {
+            digits[n++] = (char) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        while (n > 0) {
+            buf[len++] = digits[--n];
+        }
+    }
+
+    private TextLayerWriter append(char c) throws IOException {
+        ensure(1);
+        buf[len++] = c;
+        return this;
+    }
+
+    private TextLayerWriter append(String s) throws IOException {
+        int n = s.length();
+        if (n > BUFFER_SIZE - len) {
+            flushBuffer();
+        }
+        if (n > BUFFER_SIZE) {
+            for (int i = 0; i < n; ++i) {
+                append(s.charAt(i));
+            }
+        } else {
+            s.getChars(0, n, buf, len);
+            len += n;
+        }
+        return this;
+    }
+
+    // Appends text content or an attribute value, escaped for the output format.
+    private void appendEscaped(String s) throws IOException {
+        for (int i = 0, n = s.length(); i < n; ++i) {
+            char c = s.charAt(i);
+            ensure(6);
+            if (format == e_xml) {
+                switch (c) {
+                    case '<': append("&lt;"); break;
+                    case '>': append("&gt;"); break;
+                    case '&': append("&amp;"); break;
+                    case '"': append("&quot;"); break;
+                    default:
+                        // Control characters other than tab are not allowed in XML 1.0.
+                        buf[len++] = (c < 0x20 && c != '\t') ? ' ' : c;
+                }
+            } else {
+                if (c == '"' || c == '\\') {
+                    buf[len++] = '\\';
+                    buf[len++] = c;
+                } else if (c < 0x20) {
+                    buf[len++] = '\\';
+                    buf[len++] = 'u';
+                    buf[len++] = '0';
+                    buf[len++] = '0';
+                    buf[len++] = HEX[c >> 4];
+                    buf[len++] = HEX[c & 0xF];
+                } else {
+                    buf[len++] = c;
+                }
+            }
+        }
+    }
+
+    private void ensure(int n) throws IOException {
+        if (len + n > BUFFER_SIZE) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (len == 0) {
+            return;
+        }
+        if (writer != null) {
+            writer.write(buf, 0, len);
+        } else {
+            CharBuffer chars = CharBuffer.wrap(buf, 0, len);
+            // Keep a trailing high surrogate for the next chunk.
+            int keep = Character.isHighSurrogate(buf[len - 1]) ? 1 : 0;
+            chars.limit(len - keep);
+            bytes.clear();
+            CoderResult result = encoder.encode(chars, bytes, false);
+            if (result.isOverflow()) {
+                throw new IOException("Encoder buffer overflow"); // cannot happen, 3 bytes per char at most
+            }
+            stream.write(bytes.array(), 0, bytes.position());
+            if (keep > 0) {
+                buf[0] = buf[len - 1];
+            }
+            len = keep;
+            return;
+        }
+        len = 0;
+    }
+}
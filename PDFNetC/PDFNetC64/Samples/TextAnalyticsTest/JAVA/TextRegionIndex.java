@@ -0,0 +1,273 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.pdftron.common.PDFNetException;
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// TextRegionIndex answers "which text is inside this rectangle" queries for a page, as
+// ReadTextFromRect() in TextExtractTest does, but reads the page content only once.
+//
+// The text elements of the page, including those in nested form XObjects, are
+// collected in a single ElementReader pass and stored in an R-tree that is bulk loaded
+// with the Sort-Tile-Recursive (STR) algorithm. Every query is then answered from
+// memory, and the result is assembled in content stream order with a StringBuilder.
+//---------------------------------------------------------------------------------------
+public class TextRegionIndex {
+
+    private static final int NODE_CAPACITY = 16;
+
+    // One level of the tree. Entry i covers the box (x1[i], y1[i]) - (x2[i], y2[i]) and
+    // the entries first[i] ... first[i] + count[i] - 1 of the level below (or of
+    // 'order' for the leaf level).
+    private static class Level {
+        float[] x1, y1, x2, y2;
+        int[] first, count;
+    }
+
+    // The text elements, in content stream order.
+    private final int size;
+    private final float[] ex1, ey1, ex2, ey2;
+    private final String[] text;
+
+    private final int[] order;          // element indices in leaf order
+    private final List<Level> levels;   // levels.get(0) holds the leaves' parents
+
+    private TextRegionIndex(List<float[]> boxes, List<String> strings) {
+        size = strings.size();
+        ex1 = new float[size];
+        ey1 = new float[size];
+        ex2 = new float[size];
+        ey2 = new float[size];
+        text = strings.toArray(new String[size]);
+        for (int i = 0; i < size; ++i) {
+            float[] b = boxes.get(i);
+            ex1[i] = b[0];
+            ey1[i] = b[1];
+            ex2[i] = b[2];
+            ey2[i] = b[3];
+        }
+
+        // Bulk load: pack the elements into leaves, then pack each level into the next
+        // one until a single root is left.
+        order = new int[size];
+        for (int i = 0; i < size; ++i) {
+            order[i] = i;
+        }
+        levels = new ArrayList<Level>();
+        Level level = pack(order, ex1, ey1, ex2, ey2);
+        levels.add(level);
+        while (level.x1.length > 1) {
+            int n = level.x1.length;
+            int[] items = new int[n];
+            for (int i = 0; i < n; ++i) {
+                items[i] = i;
+            }
+            // pack() sorts 'items'; the parents refer to positions in that order, so the
+            // level is reordered to match.
+            Level parent = pack(items, level.x1, level.y1, level.x2, level.y2);
+            levels.set(levels.size() - 1, permute(level, items));
+            levels.add(parent);
+            level = parent;
+        }
+    }
+
+    // Reads the text elements of the page, including nested forms.
+    public static TextRegionIndex build(Page page, ElementReader reader) throws PDFNetException {
+        List<float[]> boxes = new ArrayList<float[]>();
+        List<String> strings = new ArrayList<String>();
+        reader.begin(page);
+        collect(reader, boxes, strings);
+        reader.end();
+        return new TextRegionIndex(boxes, strings);
+    }
+
+    public int getElementCount() {
+        return size;
+    }
+
+    // Returns the text of all elements that intersect the rectangle, in content stream
+    // order, each followed by a new line (the same output as ReadTextFromRect()).
+    public String getText(double x1, double y1, double x2, double y2) {
+        int[] hits = query(x1, y1, x2, y2);
+        StringBuilder sb = new StringBuilder();
+        for (int i : hits) {
+            sb.append(text[i]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public String getText(Rect rect) throws PDFNetException {
+        double[] r = rect.get();
+        return getText(Math.min(r[0], r[2]), Math.min(r[1], r[3]), Math.max(r[0], r[2]), Math.max(r[1], r[3]));
+    }
+
+    // Returns the indices of the elements that intersect the rectangle, in content stream
+    // order.
+    public int[] query(double x1, double y1, double x2, double y2) {
+        int[] result = new int[16];
+        int n = 0;
+        if (size > 0) {
+            // Depth-first traversal with an explicit stack of (level, entry) pairs.
+            int[] stack = new int[64];
+            int top = 0;
+            Level root = levels.get(levels.size() - 1);
+            for (int i = 0; i < root.x1.length; ++i) {
+                stack[top++] = levels.size() - 1;
+                stack[top++] = i;
+            }
+            while (top > 0) {
+                int entry = stack[--top], lvl = stack[--top];
+                Level level = levels.get(lvl);
+                if (level.x1[entry] > x2 || level.x2[entry] < x1 || level.y1[entry] > y2 || level.y2[entry] < y1) {
+                    continue;
+                }
+                int first = level.first[entry], end = first + level.count[entry];
+                if (lvl > 0) {
+                    for (int c = first; c < end; ++c) {
+                        if (top + 2 > stack.length) {
+                            stack = Arrays.copyOf(stack, stack.length * 2);
+                        }
+                        stack[top++] = lvl - 1;
+                        stack[top++] = c;
+                    }
+                } else {
+                    for (int c = first; c < end; ++c) {
+                        int e = order[c];
+                        if (ex1[e] <= x2 && ex2[e] >= x1 && ey1[e] <= y2 && ey2[e] >= y1) {
+                            if (n == result.length) {
+                                result = Arrays.copyOf(result, n * 2);
+                            }
+                            result[n++] = e;
+                        }
+                    }
+                }
+            }
+        }
+        result = Arrays.copyOf(result, n);
+        Arrays.sort(result); // content stream order
+        return result;
+    }
+
+    public String getElementText(int i) {
+        return text[i];
+    }
+
+    private static void collect(ElementReader reader, List<float[]> boxes, List<String> strings) throws PDFNetException {
+        Element element;
+        while ((element = reader.next()) != null) {
+            switch (element.getType()) {
+                case Element.e_text: {
+                    Rect bbox = element.getBBox();
+                    if (bbox == null) {
+                        continue;
+                    }
+                    double[] r = bbox.get();
+                    boxes.add(new float[]{(float) Math.min(r[0], r[2]), (float) Math.min(r[1], r[3]),
+                            (float) Math.max(r[0], r[2]), (float) Math.max(r[1], r[3])});
+                    strings.add(element.getTextString());
+                    break;
+                }
+                case Element.e_form: // Process form XObjects
+                    reader.formBegin();
+                    collect(reader, boxes, strings);
+                    reader.end();
+                    break;
+            }
+        }
+    }
+
+    // Sorts 'items' (entry indices with the given boxes) into STR order in place, and
+    // packs runs of NODE_CAPACITY entries into the nodes of a new level.
+    private static Level pack(int[] items, float[] x1, float[] y1, float[] x2, float[] y2) {
+        int n = items.length;
+        Integer[] idx = new Integer[n];
+        for (int i = 0; i < n; ++i) {
+            idx[i] = items[i];
+        }
+        int[] sorted = strOrder(idx, x1, y1, x2, y2);
+        System.arraycopy(sorted, 0, items, 0, n);
+
+        int nodes = Math.max(1, (n + NODE_CAPACITY - 1) / NODE_CAPACITY);
+        Level level = new Level();
+        level.x1 = new float[nodes];
+        level.y1 = new float[nodes];
+        level.x2 = new float[nodes];
+        level.y2 = new float[nodes];
+        level.first = new int[nodes];
+        level.count = new int[nodes];
+        for (int k = 0; k < nodes; ++k) {
+            int first = k * NODE_CAPACITY, end = Math.min(n, first + NODE_CAPACITY);
+            float bx1 = Float.MAX_VALUE, by1 = Float.MAX_VALUE, bx2 = -Float.MAX_VALUE, by2 = -Float.MAX_VALUE;
+            for (int i = first; i < end; ++i) {
+                int e = items[i];
+                bx1 = Math.min(bx1, x1[e]);
+                by1 = Math.min(by1, y1[e]);
+                bx2 = Math.max(bx2, x2[e]);
+                by2 = Math.max(by2, y2[e]);
+            }
+            level.x1[k] = bx1;
+            level.y1[k] = by1;
+            level.x2[k] = bx2;
+            level.y2[k] = by2;
+            level.first[k] = first;
+            level.count[k] = end - first;
+        }
+        return level;
+    }
+
+    // Sort-Tile-Recursive: sort by the x center, cut into vertical slices of
+    // sqrt(n / capacity) nodes each, and sort every slice by the y center.
+    private static int[] strOrder(Integer[] idx, final float[] x1, final float[] y1, final float[] x2, final float[] y2) {
+        int n = idx.length;
+        Arrays.sort(idx, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Float.compare(x1[a] + x2[a], x1[b] + x2[b]);
+            }
+        });
+        int leaves = (n + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int slice_size = (int) Math.ceil(Math.sqrt(leaves)) * NODE_CAPACITY;
+        Comparator<Integer> by_y = new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Float.compare(y1[a] + y2[a], y1[b] + y2[b]);
+            }
+        };
+        for (int start = 0; start < n; start += slice_size) {
+            Arrays.sort(idx, start, Math.min(n, start + slice_size), by_y);
+        }
+        int[] result = new int[n];
+        for (int i = 0; i < n; ++i) {
+            result[i] = idx[i];
+        }
+        return result;
+    }
+
+    // Reorders the entries of a level; entry i of the result is entry perm[i].
+    private static Level permute(Level level, int[] perm) {
+        int n = perm.length;
+        Level out = new Level();
+        out.x1 = new float[n];
+        out.y1 = new float[n];
+        out.x2 = new float[n];
+        out.y2 = new float[n];
+        out.first = new int[n];
+        out.count = new int[n];
+        for (int i = 0; i < n; ++i) {
+            int p = perm[i];
+            out.x1[i] = level.x1[p];
+            out.y1[i] = level.y1[p];
+            out.x2[i] = level.x2[p];
+            out.y2[i] = level.y2[p];
+            out.first[i] = level.first[p];
+            out.count[i] = level.count[p];
+        }
+        return out;
+    }
+}
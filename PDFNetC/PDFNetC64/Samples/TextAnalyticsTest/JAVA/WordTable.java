@@ -0,0 +1,274 @@
+//---------------------------------------------------------------------------------------
+// Copyright (c) 2001-2020 by PDFTron Systems Inc. All Rights Reserved.
+// Consult legal.txt regarding legal and license information.
+//---------------------------------------------------------------------------------------
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import com.pdftron.pdf.*;
+
+//---------------------------------------------------------------------------------------
+// WordTable is a compact, column oriented copy of the words that TextExtractor found on
+// a page. Instead of one Word, Rect and String object per word it keeps parallel
+// primitive arrays:
+//  - x1, y1, x2, y2: the word bounding boxes, in PDF user space,
+//  - text_start: offsets into one shared char buffer ('text'); the characters of word
+//    i are text[text_start[i]] ... text[text_start[i + 1] - 1],
+//  - line_id, para_id, flow_id: the line (numbered from 0 on each page), paragraph
+//    and flow of each word, as reported by TextExtractor,
+//  - style_id: the style of each word, an id in the page's StyleTable ('styles').
+//
+// Once built, hit-testing, highlighting and snippet generation run on the table alone,
+// without calling into PDFNet again. A table can be written to and read from a
+// ByteBuffer, including a memory-mapped file (see save() and load()).
+//---------------------------------------------------------------------------------------
+public class WordTable {
+
+    private static final int MAGIC = 0x4C425457; // "WTBL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+
+    public final int page_num;
+    public final int word_count;
+    public final float[] x1, y1, x2, y2;
+    public final int[] text_start;
+    public final char[] text;
+    public final int[] line_id, para_id, flow_id;
+    public final int[] style_id;
+    public final StyleTable styles;
+
+    private WordTable(int page_num, int word_count, int text_length, StyleTable styles) {
+        this.page_num = page_num;
+        this.word_count = word_count;
+        x1 = new float[word_count];
+        y1 = new float[word_count];
+        x2 = new float[word_count];
+        y2 = new float[word_count];
+        text_start = new int[word_count + 1];
+        text = new char[text_length];
+        line_id = new int[word_count];
+        para_id = new int[word_count];
+        flow_id = new int[word_count];
+        style_id = new int[word_count];
+        this.styles = styles;
+    }
+
+    // Copies the words of the page that 'txt' was started on (see TextExtractor.begin()).
+    // Empty words are skipped.
+    public static WordTable build(int page_num, TextExtractor txt) {
+        int capacity = Math.max(16, txt.getWordCount());
+        float[] box = new float[4 * capacity];
+        int[] ids = new int[4 * capacity];
+        StyleTable styles = new StyleTable();
+        int[] starts = new int[capacity + 1];
+        StringBuilder chars = new StringBuilder(capacity * 6);
+
+        int n = 0, line_num = 0;
+        for (TextExtractor.Line line = txt.getFirstLine(); line.isValid(); line = line.getNextLine(), ++line_num) {
+            int para = line.getParagraphID(), flow = line.getFlowID();
+            // Most words have the style of their line; comparing the styles is cheaper
+            // than reading the properties of the word's style.
+            TextExtractor.Style line_style = line.getStyle();
+            int line_style_id = styles.intern(line_style);
+            for (TextExtractor.Word word = line.getFirstWord(); word.isValid(); word = word.getNextWord()) {
+                if (word.getStringLen() == 0) {
+                    continue;
+                }
+                if (n == capacity) {
+                    capacity *= 2;
+                    box = Arrays.copyOf(box, 4 * capacity);
+                    ids = Arrays.copyOf(ids, 4 * capacity);
+                    starts = Arrays.copyOf(starts, capacity + 1);
+                }
+                // getQuad() returns the four corners in a single call, without creating a
+                // Rect; the bounding box is the min/max of the corners.
+                double[] q = word.getQuad();
+                box[4 * n] = (float) Math.min(Math.min(q[0], q[2]), Math.min(q[4], q[6]));
+                box[4 * n + 1] = (float) Math.min(Math.min(q[1], q[3]), Math.min(q[5], q[7]));
+                box[4 * n + 2] = (float) Math.max(Math.max(q[0], q[2]), Math.max(q[4], q[6]));
+                box[4 * n + 3] = (float) Math.max(Math.max(q[1], q[3]), Math.max(q[5], q[7]));
+                TextExtractor.Style style = word.getStyle();
+                ids[4 * n] = line_num;
+                ids[4 * n + 1] = para;
+                ids[4 * n + 2] = flow;
+                ids[4 * n + 3] = style.equals(line_style) ? line_style_id : styles.intern(style);
+                starts[n] = chars.length();
+                chars.append(word.getString());
+                ++n;
+            }
+        }
+
+        WordTable table = new WordTable(page_num, n, chars.length(), styles);
+        for (int i = 0; i < n; ++i) {
+            table.x1[i] = box[4 * i];
+            table.y1[i] = box[4 * i + 1];
+            table.x2[i] = box[4 * i + 2];
+            table.y2[i] = box[4 * i + 3];
+            table.line_id[i] = ids[4 * i];
+            table.para_id[i] = ids[4 * i + 1];
+            table.flow_id[i] = ids[4 * i + 2];
+            table.style_id[i] = ids[4 * i + 3];
+            table.text_start[i] = starts[i];
+        }
+        table.text_start[n] = chars.length();
+        chars.getChars(0, chars.length(), table.text, 0);
+        return table;
+    }
+
+    public int getTextLength(int word) {
+        return text_start[word + 1] - text_start[word];
+    }
+
+    public String getText(int word) {
+        return new String(text, text_start[word], getTextLength(word));
+    }
+
+    public StringBuilder appendText(int word, StringBuilder sb) {
+        return sb.append(text, text_start[word], getTextLength(word));
+    }
+
+    // Returns the index of the word whose bounding box contains the point, or -1.
+    public int hitTest(double x, double y) {
+        for (int i = 0; i < word_count; ++i) {
+            if (x >= x1[i] && x <= x2[i] && y >= y1[i] && y <= y2[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Stores the indices of the words that intersect the rectangle in 'out', and returns
+    // their number. 'out' must have room for word_count entries.
+    public int findWords(double rx1, double ry1, double rx2, double ry2, int[] out) {
+        int n = 0;
+        for (int i = 0; i < word_count; ++i) {
+            if (x1[i] <= rx2 && x2[i] >= rx1 && y1[i] <= ry2 && y2[i] >= ry1) {
+                out[n++] = i;
+            }
+        }
+        return n;
+    }
+
+    // Returns the quad points (x1, y1, x2, y1, x2, y2, x1, y2) of the word's bounding
+    // box, in the form used by Highlights and the text markup annotations.
+    public double[] getQuad(int word) {
+        return new double[]{x1[word], y1[word], x2[word], y1[word], x2[word], y2[word], x1[word], y2[word]};
+    }
+
+    // Returns the words 'first' to 'last' (inclusive) with up to 'context' words on
+    // either side, separated by spaces, or by new lines between lines.
+    public String getSnippet(int first, int last, int context) {
+        int from = Math.max(0, first - context);
+        int to = Math.min(word_count - 1, last + context);
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i <= to; ++i) {
+            if (i > from) {
+                sb.append(line_id[i] != line_id[i - 1] ? '\n' : ' ');
+            }
+            appendText(i, sb);
+        }
+        return sb.toString();
+    }
+
+    //------------------------------------------------------------------------------------
+    // Serialization
+
+    public int getSerializedSize() {
+        return HEADER_SIZE + word_count * 4 * 4 + (word_count + 1) * 4 + text.length * 2 + word_count * 4 * 4
+                + styles.getSerializedSize();
+    }
+
+    // Writes the table at the buffer's position, and advances the position.
+    public void write(ByteBuffer buf) {
+        ByteBuffer out = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putInt(page_num).putInt(word_count).putInt(text.length);
+        out.asFloatBuffer().put(x1).put(y1).put(x2).put(y2);
+        out.position(out.position() + word_count * 4 * 4);
+        out.asIntBuffer().put(text_start);
+        out.position(out.position() + (word_count + 1) * 4);
+        out.asCharBuffer().put(text);
+        out.position(out.position() + text.length * 2);
+        out.asIntBuffer().put(line_id).put(para_id).put(flow_id).put(style_id);
+        out.position(out.position() + word_count * 4 * 4);
+        styles.write(out);
+        buf.position(out.position());
+    }
+
+    // Reads a table written by write() at the buffer's position, and advances the
+    // position.
+    public static WordTable read(ByteBuffer buf) throws IOException {
+        return read(buf, -1);
+    }
+
+    // As read(), but the table gets the page number 'page_num' instead of the stored
+    // one, e.g. for a page with the same content in another document (see
+    // ExtractionCache). A 'page_num' of -1 keeps the stored page number.
+    public static WordTable read(ByteBuffer buf, int page_num) throws IOException {
+        ByteBuffer in = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC) {
+            throw new IOException("Not a word table");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported word table version: " + version);
+        }
+        int stored_page_num = in.getInt(), n = in.getInt(), text_length = in.getInt();
+        long columns = n * 4L * 4 + (n + 1) * 4L + text_length * 2L + n * 4L * 4;
+        if (n < 0 || text_length < 0 || in.remaining() < columns + 4) {
+            throw new IOException("Truncated word table");
+        }
+
+        // The style table follows the columns.
+        StyleTable styles;
+        ByteBuffer end = in.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        end.position(in.position() + (int) columns);
+        try {
+            styles = StyleTable.read(end);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated word table");
+        }
+
+        WordTable table = new WordTable(page_num == -1 ? stored_page_num : page_num, n, text_length, styles);
+        in.asFloatBuffer().get(table.x1).get(table.y1).get(table.x2).get(table.y2);
+        in.position(in.position() + n * 4 * 4);
+        in.asIntBuffer().get(table.text_start);
+        in.position(in.position() + (n + 1) * 4);
+        in.asCharBuffer().get(table.text);
+        in.position(in.position() + table.text.length * 2);
+        in.asIntBuffer().get(table.line_id).get(table.para_id).get(table.flow_id).get(table.style_id);
+        buf.position(end.position());
+        return table;
+    }
+
+    // Writes the table to a file through a memory mapping.
+    public void save(String path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            channel.truncate(0);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, getSerializedSize());
+            write(map);
+            map.force();
+        } finally {
+            file.close();
+        }
+    }
+
+    // Reads a table saved by save() through a memory mapping.
+    public static WordTable load(String path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            file.close();
+        }
+    }
+}